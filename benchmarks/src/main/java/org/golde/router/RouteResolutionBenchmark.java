@@ -0,0 +1,111 @@
+package org.golde.router;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.golde.router.annotations.Route;
+import org.golde.router.enums.RequestMethod;
+import org.golde.router.metrics.RouteMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * How long it takes to find the route for a request path, with 10, 100 and 1000 routes registered.
+ * A quarter of the routes are plain literals, the rest have one or two wildcards. Paths are picked at random so the branch predictor can't learn them.
+ * @author Eric Golde
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RouteResolutionBenchmark {
+
+	private static final int PATHS = 1024;
+
+	@Param({"10", "100", "1000"})
+	public int routes;
+
+	private RouteIndex index;
+	private String[] hits;
+	private String[] misses;
+	private int next = 0;
+
+	@Setup
+	public void setup() throws Exception {
+		index = new RouteIndex();
+		Method method = RouteResolutionBenchmark.class.getDeclaredMethod("setup");
+
+		String[] concrete = new String[routes];
+		for(int i = 0; i < routes; i++) {
+			String value;
+			switch(i % 4) {
+			case 0:
+				value = "api/v1/res" + i;
+				concrete[i] = "/api/v1/res" + i;
+				break;
+			case 1:
+				value = "api/v1/res" + i + "/{id}";
+				concrete[i] = "/api/v1/res" + i + "/42";
+				break;
+			case 2:
+				value = "users/{user}/items" + i;
+				concrete[i] = "/users/bob/items" + i + "/";
+				break;
+			default:
+				value = "shop/{store}/cat" + i + "/{item}/reviews";
+				concrete[i] = "/Shop/main/CAT" + i + "/77/reviews";
+				break;
+			}
+			index.add(new MethodHolder(route(value), method, RouteResolutionBenchmark.class, null, RouteTemplate.compile(value), new RouteMetrics("GET", value), null, null, null));
+		}
+
+		Random random = new Random(42);
+		hits = new String[PATHS];
+		misses = new String[PATHS];
+		for(int i = 0; i < PATHS; i++) {
+			hits[i] = concrete[random.nextInt(routes)];
+			misses[i] = "/api/v1/missing" + random.nextInt(routes) + "/x/y";
+		}
+	}
+
+	@Benchmark
+	public MethodHolder hit() {
+		return index.find(RequestMethod.GET, hits[next++ & (PATHS - 1)]);
+	}
+
+	@Benchmark
+	public MethodHolder miss() {
+		return index.find(RequestMethod.GET, misses[next++ & (PATHS - 1)]);
+	}
+
+	/**
+	 * A @Route with the given value, and every other attribute left at its default
+	 */
+	private static Route route(String value) {
+		return (Route) Proxy.newProxyInstance(Route.class.getClassLoader(), new Class<?>[] {Route.class}, (proxy, m, args) -> {
+			switch(m.getName()) {
+			case "value":
+				return value;
+			case "annotationType":
+				return Route.class;
+			default:
+				return m.getDefaultValue();
+			}
+		});
+	}
+
+}
@@ -0,0 +1,124 @@
+package org.golde.router.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.golde.router.engine.Exchange;
+
+/**
+ * An exchange that never touches the network, so benchmarks only measure the router.
+ * The response body is counted and thrown away.
+ * @author Eric Golde
+ *
+ */
+public class BenchExchange implements Exchange {
+
+	private static final InetSocketAddress REMOTE = new InetSocketAddress("127.0.0.1", 50000);
+
+	private final String method;
+	private final String uri;
+	private final Map<String, List<String>> requestHeaders = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+	private final Map<String, List<String>> responseHeaders = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+	private final byte[] body;
+	private final CountingSink sink = new CountingSink();
+
+	private int status;
+
+	public BenchExchange(String method, String uri) {
+		this(method, uri, null, new byte[0]);
+	}
+
+	public BenchExchange(String method, String uri, String contentType, byte[] body) {
+		this.method = method;
+		this.uri = uri;
+		this.body = body;
+		if(contentType != null) {
+			requestHeaders.put("Content-Type", Collections.singletonList(contentType));
+		}
+		if(body.length != 0) {
+			requestHeaders.put("Content-Length", Collections.singletonList(Integer.toString(body.length)));
+		}
+	}
+
+	@Override
+	public String getRequestMethod() {
+		return method;
+	}
+
+	@Override
+	public String getRequestURI() {
+		return uri;
+	}
+
+	@Override
+	public Map<String, List<String>> getRequestHeaders() {
+		return requestHeaders;
+	}
+
+	@Override
+	public InputStream getRequestBody() {
+		return new ByteArrayInputStream(body);
+	}
+
+	@Override
+	public Map<String, List<String>> getResponseHeaders() {
+		return responseHeaders;
+	}
+
+	@Override
+	public void sendResponseHeaders(int code, long length) {
+		status = code;
+	}
+
+	@Override
+	public OutputStream getResponseBody() {
+		return sink;
+	}
+
+	@Override
+	public InetSocketAddress getRemoteAddress() {
+		return REMOTE;
+	}
+
+	@Override
+	public void close() {
+
+	}
+
+	/**
+	 * @return the status code that was sent
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return how many body bytes were written
+	 */
+	public long getWritten() {
+		return sink.count;
+	}
+
+	private static class CountingSink extends OutputStream {
+
+		private long count = 0;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+
+	}
+
+}
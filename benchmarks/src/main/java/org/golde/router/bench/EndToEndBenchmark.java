@@ -0,0 +1,191 @@
+package org.golde.router.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.golde.router.Router;
+import org.golde.router.RouterExecutors;
+import org.golde.router.annotations.Route;
+import org.golde.router.engine.HttpEngine;
+import org.golde.router.engine.NioHttpEngine;
+import org.golde.router.engine.SunHttpEngine;
+import org.golde.router.objects.Request;
+import org.golde.router.objects.Response;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Real requests over loopback, on both engines. Each benchmark thread keeps one connection open and sends requests one after another.
+ * Throughput is requests per second across every thread, and sample time gives the latency percentiles.
+ * @author Eric Golde
+ *
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+//Without nodelay the com.sun server waits on delayed ACKs, and every keep-alive request takes about 40ms
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+@Threads(4)
+public class EndToEndBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class Server {
+
+		@Param({"sun", "nio"})
+		public String engine;
+
+		Router router;
+		ExecutorService executor;
+		int port;
+
+		@Setup(Level.Trial)
+		public void start() throws IOException {
+			HttpEngine http = engine.equals("nio") ? new NioHttpEngine(new InetSocketAddress("127.0.0.1", 0)) : new SunHttpEngine(new InetSocketAddress("127.0.0.1", 0));
+			executor = RouterExecutors.fixed(8);
+			router = new Router(http);
+			router.setReuseInstances(true);
+			router.setExecutor(executor);
+			router.register(Routes.class);
+			router.start();
+			port = http.getAddress().getPort();
+		}
+
+		@TearDown(Level.Trial)
+		public void stop() {
+			router.getEngine().stop(0);
+			executor.shutdownNow();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Client {
+
+		private Socket socket;
+		private OutputStream out;
+		private InputStream in;
+		private final byte[] buffer = new byte[16 * 1024];
+
+		private byte[] hello;
+		private byte[] user;
+
+		@Setup(Level.Trial)
+		public void connect(Server server) throws IOException {
+			socket = new Socket("127.0.0.1", server.port);
+			socket.setTcpNoDelay(true);
+			out = socket.getOutputStream();
+			in = socket.getInputStream();
+			hello = request("/hello");
+			user = request("/users/42?fields=name");
+		}
+
+		@TearDown(Level.Trial)
+		public void close() throws IOException {
+			socket.close();
+		}
+
+		private static byte[] request(String target) {
+			return ("GET " + target + " HTTP/1.1\r\nHost: localhost\r\nUser-Agent: router-bench\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+		}
+
+		/**
+		 * Send a request and read the whole response
+		 * @return the length of the body
+		 */
+		int send(byte[] request) throws IOException {
+			out.write(request);
+			out.flush();
+
+			//Read until the end of the head, then whatever is left of the body
+			int filled = 0;
+			int headEnd = -1;
+			while(headEnd == -1) {
+				int n = in.read(buffer, filled, buffer.length - filled);
+				if(n == -1) {
+					throw new IOException("Connection closed");
+				}
+				filled += n;
+				headEnd = indexOfHeadEnd(filled);
+			}
+
+			int contentLength = contentLength(headEnd);
+			int remaining = headEnd + contentLength - filled;
+			while(remaining > 0) {
+				int n = in.read(buffer, 0, Math.min(buffer.length, remaining));
+				if(n == -1) {
+					throw new IOException("Connection closed");
+				}
+				remaining -= n;
+			}
+			return contentLength;
+		}
+
+		private int indexOfHeadEnd(int filled) {
+			for(int i = 3; i < filled; i++) {
+				if(buffer[i] == '\n' && buffer[i - 1] == '\r' && buffer[i - 2] == '\n' && buffer[i - 3] == '\r') {
+					return i + 1;
+				}
+			}
+			return -1;
+		}
+
+		private int contentLength(int headEnd) throws IOException {
+			String head = new String(buffer, 0, headEnd, StandardCharsets.ISO_8859_1).toLowerCase();
+			int index = head.indexOf("content-length:");
+			if(index == -1) {
+				throw new IOException("Response has no Content-Length");
+			}
+			int end = head.indexOf('\r', index);
+			return Integer.parseInt(head.substring(index + 15, end).trim());
+		}
+	}
+
+	@Benchmark
+	public int text(Client client) throws IOException {
+		return client.send(client.hello);
+	}
+
+	@Benchmark
+	public int json(Client client) throws IOException {
+		return client.send(client.user);
+	}
+
+	public static class Routes {
+
+		@Route("hello")
+		public void hello(Request req, Response res) {
+			res.sendText("Hello, World!");
+		}
+
+		@Route("users/{id}")
+		public void user(Request req, Response res) {
+			JsonObject json = new JsonObject();
+			json.addProperty("id", req.getWildcardAsInteger("id"));
+			json.addProperty("name", "user" + req.getWildcard("id"));
+			json.addProperty("fields", req.getQuery("fields"));
+			res.sendJSON(json);
+		}
+
+	}
+
+}
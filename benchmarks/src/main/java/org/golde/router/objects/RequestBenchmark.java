@@ -0,0 +1,91 @@
+package org.golde.router.objects;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.golde.router.RouteTemplate;
+import org.golde.router.Router;
+import org.golde.router.bench.BenchExchange;
+import org.golde.router.engine.NioHttpEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building a Request and reading the parts routes usually ask for: a wildcard, the query string and a url encoded form.
+ * @author Eric Golde
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestBenchmark {
+
+	private static final String PATH = "/users/42/posts/7";
+	private static final String PLAIN_QUERY = "page=2&size=50&sort=name&order=asc&flag";
+	private static final String ENCODED_QUERY = "q=hello+world&name=%C3%A9ric+golde&tag=a&tag=b&redirect=%2Fhome%3Fx%3D1";
+
+	private Router router;
+	private RouteTemplate template;
+	private BenchExchange exchange;
+	private byte[] form;
+
+	@Setup
+	public void setup() throws Exception {
+		//Never started, only used for its settings
+		router = new Router(new NioHttpEngine(0));
+		template = RouteTemplate.compile("users/{id}/posts/{post}");
+		exchange = new BenchExchange("GET", PATH + "?" + PLAIN_QUERY);
+
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < 20; i++) {
+			if(i != 0) {
+				sb.append('&');
+			}
+			sb.append("field").append(i).append('=').append(i % 2 == 0 ? "plain" + i : "some+value+%26+more%21");
+		}
+		form = sb.toString().getBytes(StandardCharsets.US_ASCII);
+	}
+
+	@Benchmark
+	public Request construct() {
+		return new Request(router, exchange, template, PATH, PLAIN_QUERY);
+	}
+
+	@Benchmark
+	public String constructAndWildcard() {
+		return new Request(router, exchange, template, PATH, PLAIN_QUERY).getWildcard("id");
+	}
+
+	@Benchmark
+	public Parameters parsePlainQuery() {
+		return ParameterParser.parse(PLAIN_QUERY);
+	}
+
+	@Benchmark
+	public Parameters parseEncodedQuery() {
+		return ParameterParser.parse(ENCODED_QUERY);
+	}
+
+	@Benchmark
+	public String queryParameter() {
+		return new Request(router, exchange, template, PATH, ENCODED_QUERY).getQuery("name");
+	}
+
+	@Benchmark
+	public Parameters parseForm() {
+		BenchExchange post = new BenchExchange("POST", "/form", "application/x-www-form-urlencoded", form);
+		return new Request(router, post, RouteTemplate.EMPTY, "/form", null).getForm();
+	}
+
+}
@@ -0,0 +1,118 @@
+package org.golde.router.objects;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.golde.router.Router;
+import org.golde.router.bench.BenchExchange;
+import org.golde.router.engine.NioHttpEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * Sending responses: JSON serialization, both built up front and streamed, and sending a file.
+ * The exchange throws the bytes away, so this only measures the router and Gson.
+ * @author Eric Golde
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResponseBenchmark {
+
+	/**
+	 * Items in the JSON list, and KiB in the file
+	 */
+	@Param({"10", "1000"})
+	public int size;
+
+	private Router router;
+	private JsonObject json;
+	private List<User> users;
+	private File file;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		router = new Router(new NioHttpEngine(0));
+
+		json = new JsonObject();
+		JsonArray array = new JsonArray();
+		users = new ArrayList<User>(size);
+		for(int i = 0; i < size; i++) {
+			User user = new User(i, "user" + i, "user" + i + "@example.com", i % 3 == 0);
+			users.add(user);
+			array.add(router.getGson().toJsonTree(user));
+		}
+		json.add("users", array);
+		json.addProperty("count", size);
+
+		byte[] data = new byte[size * 1024];
+		new Random(42).nextBytes(data);
+		file = File.createTempFile("router-bench", ".bin");
+		file.deleteOnExit();
+		Files.write(file.toPath(), data);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public long sendJSON() {
+		BenchExchange exchange = new BenchExchange("GET", "/users");
+		new Response(router, exchange).sendJSON(json);
+		return exchange.getWritten();
+	}
+
+	@Benchmark
+	public long streamJSON() {
+		BenchExchange exchange = new BenchExchange("GET", "/users");
+		new Response(router, exchange).streamJSON(users);
+		return exchange.getWritten();
+	}
+
+	@Benchmark
+	public long sendFile() {
+		BenchExchange exchange = new BenchExchange("GET", "/file");
+		new Response(router, exchange).sendFile(file, false, "application/octet-stream");
+		return exchange.getWritten();
+	}
+
+	public static class User {
+		public final int id;
+		public final String name;
+		public final String email;
+		public final boolean admin;
+
+		public User(int id, String name, String email, boolean admin) {
+			this.id = id;
+			this.name = name;
+			this.email = email;
+			this.admin = admin;
+		}
+	}
+
+}
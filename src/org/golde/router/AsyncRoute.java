@@ -0,0 +1,130 @@
+package org.golde.router;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+import org.golde.router.enums.StatusCode;
+import org.golde.router.objects.Response;
+
+/**
+ * Finishes the response of a route that returned a CompletionStage, once it completes or its timeout fires, whichever comes first.
+ * The worker thread is already back in the pool by then. The callback runs on whatever thread completed the future, or on the shared timer thread.
+ * @author Eric Golde
+ *
+ */
+final class AsyncRoute implements BiConsumer<Object, Throwable>, Runnable {
+
+	private final Router router;
+	private final Response res;
+	private final MethodHolder holder;
+	private final long start;
+	private final CompletionStage<?> stage;
+
+	/**
+	 * Set by whichever of completion and timeout gets there first, the other one does nothing
+	 */
+	private final AtomicBoolean done = new AtomicBoolean();
+
+	private volatile ScheduledFuture<?> timeout;
+
+	private AsyncRoute(Router router, Response res, MethodHolder holder, long start, CompletionStage<?> stage) {
+		this.router = router;
+		this.res = res;
+		this.holder = holder;
+		this.start = start;
+		this.stage = stage;
+	}
+
+	/**
+	 * Finish the response once the route's future completes
+	 * @param router the router
+	 * @param res the response
+	 * @param holder the route
+	 * @param start when the request started, from System.nanoTime()
+	 * @param stage what the route returned
+	 * @param timeoutMillis how long to wait before sending 408, or -1 to wait forever
+	 */
+	static void await(Router router, Response res, MethodHolder holder, long start, CompletionStage<?> stage, long timeoutMillis) {
+		AsyncRoute async = new AsyncRoute(router, res, holder, start, stage);
+		if(timeoutMillis > 0) {
+			async.timeout = RouterExecutors.timer().schedule(async, timeoutMillis, TimeUnit.MILLISECONDS);
+		}
+		stage.whenComplete(async);
+	}
+
+	/**
+	 * The route's future completed
+	 */
+	@Override
+	public void accept(Object value, Throwable error) {
+		if(!done.compareAndSet(false, true)) {
+			return;
+		}
+		ScheduledFuture<?> t = timeout;
+		if(t != null) {
+			t.cancel(false);
+		}
+
+		try {
+			if(error != null) {
+				router.sendError(res, unwrap(error));
+			}
+			else if(!res.isCommitted()) {
+				if(value == null) {
+					res.sendSuccess();
+				}
+				else if(value instanceof CharSequence) {
+					res.sendText(value.toString());
+				}
+				else {
+					res.sendJSON(value);
+				}
+			}
+		}
+		catch(Throwable e) {
+			router.sendError(res, e);
+		}
+		finally {
+			router.finish(holder, res, start);
+		}
+	}
+
+	/**
+	 * The timeout fired
+	 */
+	@Override
+	public void run() {
+		if(!done.compareAndSet(false, true)) {
+			return;
+		}
+
+		try {
+			if(!res.isCommitted()) {
+				res.setStatusCode(StatusCode.REQUEST_TIMEOUT).sendText("408. The request took too long.");
+			}
+			//Let whatever the route is waiting on know nobody wants the result anymore
+			CompletableFuture<?> future = stage.toCompletableFuture();
+			future.cancel(false);
+		}
+		catch(UnsupportedOperationException e) {
+			//Some CompletionStages can't be turned into a CompletableFuture, they just keep running
+		}
+		finally {
+			router.finish(holder, res, start);
+		}
+	}
+
+	private static Throwable unwrap(Throwable error) {
+		while((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null) {
+			error = error.getCause();
+		}
+		return error;
+	}
+
+}
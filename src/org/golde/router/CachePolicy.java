@@ -0,0 +1,98 @@
+package org.golde.router;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.golde.router.annotations.Cached;
+import org.golde.router.objects.Request;
+
+/**
+ * The @Cached settings of a route, and how its requests are turned into cache keys.
+ * @author Eric Golde
+ *
+ */
+final class CachePolicy {
+
+	final long ttlMillis;
+
+	/**
+	 * Sorted, so the key doesn't depend on the order they were listed in
+	 */
+	private final String[] query;
+	private final String[] headers;
+	private final boolean wholeQuery;
+
+	private CachePolicy(Cached cached) {
+		this.ttlMillis = cached.value() * 1000;
+		this.wholeQuery = Arrays.asList(cached.query()).contains("*");
+		this.query = cached.query().clone();
+		this.headers = cached.headers().clone();
+		Arrays.sort(query);
+		Arrays.sort(headers, String.CASE_INSENSITIVE_ORDER);
+	}
+
+	/**
+	 * @return the policy, or null if the route is not cached
+	 */
+	static CachePolicy of(Cached cached) {
+		return cached.value() > 0 ? new CachePolicy(cached) : null;
+	}
+
+	/**
+	 * The cache key of a request: the path without repeated or trailing slashes, and the values of the query parameters and headers the route listed.
+	 * Segments that are not wildcards are matched ignoring case, so they are lower cased the same way the route index does. Wildcard values keep their case, the route sees them as they were sent.
+	 * @param req the request
+	 * @param template the route that matched it
+	 * @return the key
+	 */
+	String key(Request req, RouteTemplate template) {
+		String path = req.getPath();
+		StringBuilder sb = new StringBuilder(path.length() + 32);
+		int start = path.length() != 0 && path.charAt(0) == '/' ? 1 : 0;
+		int segment = 0;
+		while(start < path.length()) {
+			int end = path.indexOf('/', start);
+			if(end == -1) {
+				end = path.length();
+			}
+			if(end > start) {
+				if(sb.length() > 0) {
+					sb.append('/');
+				}
+				String value = path.substring(start, end);
+				boolean literal = segment >= template.getSegmentCount() || template.getSegment(segment) != null;
+				sb.append(literal ? value.toLowerCase() : value);
+			}
+			segment++;
+			start = end + 1;
+		}
+
+		if(wholeQuery) {
+			if(req.getQueryString() != null) {
+				sb.append('?').append(req.getQueryString());
+			}
+		}
+		else {
+			for(String name : query) {
+				List<String> values = req.getQuery().getAll(name);
+				if(values != null) {
+					for(String value : values) {
+						//Length first, so a value can't pretend to be another parameter
+						sb.append('&').append(name).append('=').append(value.length()).append(':').append(value);
+					}
+				}
+			}
+		}
+
+		for(String name : headers) {
+			List<String> values = req.getHeaders().get(name);
+			if(values != null) {
+				for(String value : values) {
+					sb.append('\n').append(name).append(':').append(value.length()).append(':').append(value);
+				}
+			}
+		}
+		return sb.toString();
+	}
+
+}
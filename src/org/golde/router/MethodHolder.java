@@ -0,0 +1,35 @@
+package org.golde.router;
+
+import java.lang.reflect.Method;
+
+import org.golde.router.annotations.Route;
+import org.golde.router.metrics.RouteMetrics;
+import org.golde.router.objects.JsonAdapters;
+
+import lombok.AllArgsConstructor;
+
+/**
+ * Holds everything we need to know about a single @Route annotated method.
+ * @author Eric Golde
+ *
+ */
+@AllArgsConstructor
+class MethodHolder {
+	final Route route;
+	final Method method;
+	final Class<?> clazz;
+	final RouteInvoker invoker;
+	final RouteTemplate template;
+	final RouteMetrics metrics;
+	final JsonAdapters json;
+
+	/**
+	 * The route's own rate limit, null if it has none
+	 */
+	final RateLimiter limiter;
+
+	/**
+	 * How the route's responses are cached, null if they aren't
+	 */
+	final CachePolicy cache;
+}
@@ -0,0 +1,25 @@
+package org.golde.router;
+
+import org.golde.router.objects.Request;
+import org.golde.router.objects.Response;
+
+/**
+ * Middleware interface. Runs before the route, for things every route needs like auth checks, CORS or timing.
+ * Added with {@link Router#use(Middleware)} or {@link Router#use(String, Middleware)}, and run in the order they were added.
+ * @author Eric Golde
+ *
+ */
+public interface Middleware {
+
+	/**
+	 * Called for every request this middleware applies to.
+	 * Either send a response to stop the request here (for example a 401), or call {@link MiddlewareChain#next()} to run the next middleware and then the route.
+	 * Code after next() runs once the route is done.
+	 * @param req The incomming request object
+	 * @param res The outgoing response object
+	 * @param chain the rest of the middleware, and the route
+	 * @throws Exception if something goes wrong. Throw a {@link org.golde.router.exceptions.HttpStatusException} to send a specific status code.
+	 */
+	public abstract void handle(Request req, Response res, MiddlewareChain chain) throws Exception;
+
+}
@@ -0,0 +1,73 @@
+package org.golde.router;
+
+import org.golde.router.enums.RequestMethod;
+import org.golde.router.objects.Request;
+import org.golde.router.objects.Response;
+
+/**
+ * The middleware still left to run for a request, followed by the route. Handed to {@link Middleware#handle(Request, Response, MiddlewareChain)}.
+ * One of these is made per request, it just walks the array of middleware built when the router started.
+ * @author Eric Golde
+ *
+ */
+public final class MiddlewareChain {
+
+	private final Router router;
+	private final MiddlewareHolder[] middleware;
+	private final Request req;
+	private final Response res;
+	private final MethodHolder holder;
+	private final RequestMethod method;
+	private final String path;
+
+	/**
+	 * Index of the next middleware to check
+	 */
+	private int index = 0;
+
+	/**
+	 * What the route returned, so the router can wait on it if it is a CompletableFuture
+	 */
+	Object result;
+
+	MiddlewareChain(Router router, MiddlewareHolder[] middleware, Request req, Response res, MethodHolder holder, RequestMethod method, String path) {
+		this.router = router;
+		this.middleware = middleware;
+		this.req = req;
+		this.res = res;
+		this.holder = holder;
+		this.method = method;
+		this.path = path;
+	}
+
+	/**
+	 * Run the next middleware. Once there are none left, runs the route (or a static file, or the 404 page).
+	 * Does nothing if the response was already sent.
+	 * If the route returns a CompletableFuture, this returns as soon as the route does, not once the future completes.
+	 * @throws Exception if the middleware or route threw
+	 */
+	public void next() throws Exception {
+		if(res.isCommitted()) {
+			return;
+		}
+
+		while(index < middleware.length) {
+			MiddlewareHolder next = middleware[index++];
+			if(next.matches(path)) {
+				next.middleware.handle(req, res, this);
+				return;
+			}
+		}
+
+		try {
+			result = router.dispatch(req, res, holder, method, path);
+		}
+		catch(Exception | Error e) {
+			throw e;
+		}
+		catch(Throwable t) {
+			throw new RuntimeException(t);
+		}
+	}
+
+}
@@ -0,0 +1,43 @@
+package org.golde.router;
+
+/**
+ * A middleware, and the path prefix it was added with.
+ * @author Eric Golde
+ *
+ */
+class MiddlewareHolder {
+
+	/**
+	 * Lower case, without a leading or trailing /. Empty means every path.
+	 */
+	final String prefix;
+	final Middleware middleware;
+
+	MiddlewareHolder(String prefix, Middleware middleware) {
+		while(prefix.startsWith("/")) {
+			prefix = prefix.substring(1);
+		}
+		while(prefix.endsWith("/")) {
+			prefix = prefix.substring(0, prefix.length() - 1);
+		}
+		this.prefix = prefix.toLowerCase();
+		this.middleware = middleware;
+	}
+
+	/**
+	 * @param path the request path, without the query string
+	 * @return true if the path is the prefix, or is inside it. /api matches /api and /api/users, but not /apis
+	 */
+	boolean matches(String path) {
+		if(prefix.isEmpty()) {
+			return true;
+		}
+		int start = path.length() != 0 && path.charAt(0) == '/' ? 1 : 0;
+		if(!path.regionMatches(true, start, prefix, 0, prefix.length())) {
+			return false;
+		}
+		int end = start + prefix.length();
+		return path.length() == end || path.charAt(end) == '/';
+	}
+
+}
@@ -0,0 +1,159 @@
+package org.golde.router;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.golde.router.engine.Exchange;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Limits how many requests each client can make, with a token bucket per client.
+ * Set one for every request with Router.setRateLimiter(), or for a single route with @Route(rateLimit = @RateLimit(...)).
+ * <p>
+ * Each bucket is a single AtomicLong holding the time it will be full again, so taking a token is one compare and set and never blocks.
+ * Buckets live in a few ConcurrentHashMaps picked by the key's hash, so clients don't fight over one map.
+ * A bucket that is full again is the same as no bucket, so those are dropped whenever a map runs out of room.
+ * If a map is full of clients that are all still limited, new clients share one bucket until room frees up.
+ * @author Eric Golde
+ *
+ */
+public class RateLimiter {
+
+	private static final int STRIPES = 16;
+
+	/**
+	 * Don't look for idle buckets more than once a second per stripe, when a stripe is full of busy clients
+	 */
+	private static final long SWEEP_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+	/**
+	 * Nanoseconds it takes to earn one token
+	 */
+	private final long interval;
+
+	/**
+	 * How far ahead of now a bucket can be before it is empty
+	 */
+	private final long capacity;
+
+	private final String header;
+	private final Stripe[] stripes = new Stripe[STRIPES];
+
+	/**
+	 * Roughly how many clients are remembered at once. Clients past this share one bucket per stripe.
+	 */
+	@Getter
+	@Setter
+	private volatile int maxClients = 100000;
+
+	/**
+	 * Limit clients by IP address
+	 * @param perSecond requests per second each client can make
+	 * @param burst how many requests a client can make at once, after being idle. 0 allows one second worth of requests.
+	 */
+	public RateLimiter(double perSecond, int burst) {
+		this(perSecond, burst, null);
+	}
+
+	/**
+	 * Limit clients by a request header, such as an API key
+	 * @param perSecond requests per second each client can make
+	 * @param burst how many requests a client can make at once, after being idle. 0 allows one second worth of requests.
+	 * @param header the header that tells clients apart. Requests without it are limited by IP address. Null or empty to always use the IP address.
+	 */
+	public RateLimiter(double perSecond, int burst, String header) {
+		if(perSecond <= 0) {
+			throw new IllegalArgumentException("perSecond must be more than 0");
+		}
+		if(burst <= 0) {
+			burst = (int) Math.max(1, Math.ceil(perSecond));
+		}
+		this.interval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / perSecond));
+		this.capacity = interval * burst;
+		this.header = header == null || header.isEmpty() ? null : header;
+		for(int i = 0; i < STRIPES; i++) {
+			stripes[i] = new Stripe();
+		}
+	}
+
+	/**
+	 * Take a token for a client
+	 * @param key the client, anything with equals and hashCode
+	 * @return 0 if the request is allowed, otherwise how many nanoseconds until it would be
+	 */
+	public long tryAcquire(Object key) {
+		int h = key.hashCode();
+		Stripe stripe = stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
+		long now = System.nanoTime();
+
+		AtomicLong bucket = stripe.buckets.get(key);
+		if(bucket == null) {
+			bucket = stripe.bucketFor(key, now, Math.max(1, maxClients / STRIPES));
+		}
+
+		while(true) {
+			long full = bucket.get();
+			long next = Math.max(full, now) + interval;
+			if(next - now > capacity) {
+				return next - now - capacity;
+			}
+			if(bucket.compareAndSet(full, next)) {
+				return 0;
+			}
+		}
+	}
+
+	/**
+	 * Take a token for whoever sent the request
+	 * @return 0 if the request is allowed, otherwise how many nanoseconds until it would be
+	 */
+	long tryAcquire(Exchange exchange) {
+		return tryAcquire(keyOf(exchange));
+	}
+
+	private Object keyOf(Exchange exchange) {
+		if(header != null) {
+			List<String> values = exchange.getRequestHeaders().get(header);
+			if(values != null && !values.isEmpty()) {
+				return values.get(0);
+			}
+		}
+		InetSocketAddress address = exchange.getRemoteAddress();
+		if(address == null || address.getAddress() == null) {
+			return "";
+		}
+		//InetAddress compares by the address, so there is no need to turn it into a string
+		return address.getAddress();
+	}
+
+	private static final class Stripe {
+
+		final ConcurrentHashMap<Object, AtomicLong> buckets = new ConcurrentHashMap<Object, AtomicLong>();
+
+		/**
+		 * Shared by every client that arrived while the stripe was full
+		 */
+		final AtomicLong overflow = new AtomicLong(Long.MIN_VALUE);
+
+		volatile long nextSweep = System.nanoTime();
+
+		AtomicLong bucketFor(Object key, long now, int limit) {
+			if(buckets.size() >= limit && now - nextSweep >= 0) {
+				nextSweep = now + SWEEP_INTERVAL;
+				//A bucket that is full again behaves exactly like a new one
+				buckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+			}
+			if(buckets.size() >= limit) {
+				return overflow;
+			}
+			return buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+		}
+
+	}
+
+}
@@ -0,0 +1,67 @@
+package org.golde.router;
+
+import org.golde.router.engine.Exchange;
+import org.golde.router.objects.JsonAdapters;
+import org.golde.router.objects.Request;
+import org.golde.router.objects.Response;
+
+/**
+ * Keeps one spare Request and Response per thread, for Router.setRecycleRequests(true).
+ * A spare is taken out while it is in use, so a thread that handles a request inside another one just makes new ones.
+ * @author Eric Golde
+ *
+ */
+final class RequestPool {
+
+	private final Router router;
+	private final ThreadLocal<Spare> spares = ThreadLocal.withInitial(Spare::new);
+
+	RequestPool(Router router) {
+		this.router = router;
+	}
+
+	Request request(Exchange exchange, RouteTemplate template, String path, String queryString, JsonAdapters json) {
+		Spare spare = spares.get();
+		Request req = spare.request;
+		if(req == null) {
+			return new Request(router, exchange, template, path, queryString, json);
+		}
+		spare.request = null;
+		return req.reuse(exchange, template, path, queryString, json);
+	}
+
+	Response response(Exchange exchange, JsonAdapters json) {
+		Spare spare = spares.get();
+		Response res = spare.response;
+		if(res == null) {
+			return new Response(router, exchange, json);
+		}
+		spare.response = null;
+		return res.reuse(exchange, json);
+	}
+
+	/**
+	 * Give back a request and response whose exchange is done.
+	 * A response that was not sent yet could still be sent from another thread, so those are left to the garbage collector.
+	 * @param req the request, or null if there was none
+	 */
+	void release(Request req, Response res) {
+		if(!res.isCommitted()) {
+			return;
+		}
+		boolean debug = router.isRecycleDebug();
+		Spare spare = spares.get();
+		if(req != null) {
+			req.release(debug);
+			spare.request = req;
+		}
+		res.release(debug);
+		spare.response = res;
+	}
+
+	private static final class Spare {
+		Request request;
+		Response response;
+	}
+
+}
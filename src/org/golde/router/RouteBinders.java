@@ -0,0 +1,348 @@
+package org.golde.router;
+
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+
+import org.golde.router.annotations.Body;
+import org.golde.router.annotations.Path;
+import org.golde.router.annotations.Query;
+import org.golde.router.enums.StatusCode;
+import org.golde.router.exceptions.HttpStatusException;
+import org.golde.router.objects.Parameters;
+import org.golde.router.objects.Request;
+import org.golde.router.objects.Response;
+
+/**
+ * Turns the parameters of a @Route method into MethodHandles of type (Request, Response) -&gt; parameter.
+ * Everything about a parameter (where the value comes from, the wildcard index, how to convert it) is worked out once when the route is registered.
+ * Primitives are converted straight into the route method's arguments, so they are never boxed.
+ * @author Eric Golde
+ *
+ */
+final class RouteBinders {
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	private static final MethodHandle WILDCARD;
+	private static final MethodHandle QUERY;
+	private static final MethodHandle OR_DEFAULT;
+	private static final MethodHandle TO_INT;
+	private static final MethodHandle TO_LONG;
+	private static final MethodHandle TO_DOUBLE;
+	private static final MethodHandle TO_FLOAT;
+	private static final MethodHandle TO_BOOLEAN;
+	private static final MethodHandle TO_INTEGER_BOXED;
+	private static final MethodHandle TO_LONG_BOXED;
+	private static final MethodHandle TO_DOUBLE_BOXED;
+	private static final MethodHandle TO_FLOAT_BOXED;
+	private static final MethodHandle TO_BOOLEAN_BOXED;
+	private static final MethodHandle TO_ENUM;
+	private static final MethodHandle BODY_TEXT;
+	private static final MethodHandle BODY_BYTES;
+	private static final MethodHandle BODY_STREAM;
+	private static final MethodHandle BODY_FORM;
+	private static final MethodHandle BODY_JSON;
+
+	static {
+		try {
+			WILDCARD = find("wildcard", String.class, RouteTemplate.class, int.class, Request.class);
+			QUERY = find("query", String.class, String.class, Request.class);
+			OR_DEFAULT = find("orDefault", String.class, String.class, boolean.class, String.class, String.class);
+			TO_INT = find("toInt", int.class, String.class, String.class);
+			TO_LONG = find("toLong", long.class, String.class, String.class);
+			TO_DOUBLE = find("toDouble", double.class, String.class, String.class);
+			TO_FLOAT = find("toFloat", float.class, String.class, String.class);
+			TO_BOOLEAN = find("toBoolean", boolean.class, String.class, String.class);
+			TO_INTEGER_BOXED = find("toIntegerBoxed", Integer.class, String.class, String.class);
+			TO_LONG_BOXED = find("toLongBoxed", Long.class, String.class, String.class);
+			TO_DOUBLE_BOXED = find("toDoubleBoxed", Double.class, String.class, String.class);
+			TO_FLOAT_BOXED = find("toFloatBoxed", Float.class, String.class, String.class);
+			TO_BOOLEAN_BOXED = find("toBooleanBoxed", Boolean.class, String.class, String.class);
+			TO_ENUM = find("toEnum", Enum.class, Class.class, String.class, String.class);
+			BODY_TEXT = LOOKUP.findVirtual(Request.class, "getBodyAsText", MethodType.methodType(String.class));
+			BODY_BYTES = LOOKUP.findVirtual(Request.class, "getBodyBytes", MethodType.methodType(byte[].class));
+			BODY_STREAM = LOOKUP.findVirtual(Request.class, "getBodyStream", MethodType.methodType(InputStream.class));
+			BODY_FORM = LOOKUP.findVirtual(Request.class, "getForm", MethodType.methodType(Parameters.class));
+			BODY_JSON = LOOKUP.findVirtual(Request.class, "readJsonRequired", MethodType.methodType(Object.class, Type.class));
+		}
+		catch(ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private RouteBinders() {
+
+	}
+
+	private static MethodHandle find(String name, Class<?> returnType, Class<?>... parameters) throws ReflectiveOperationException {
+		return LOOKUP.findStatic(RouteBinders.class, name, MethodType.methodType(returnType, parameters));
+	}
+
+	/**
+	 * Adapt a route method handle so it takes (instance, Request, Response), filling every other parameter from the request
+	 * @param handle the route method, with the instance as the first parameter if it has one
+	 * @param method the route method
+	 * @param template the compiled @Route value, to find wildcards in
+	 * @return a handle of type (Object instance, Request, Response) -&gt; Object
+	 * @throws IllegalArgumentException if a parameter can't be bound
+	 */
+	static MethodHandle bind(MethodHandle handle, Method method, RouteTemplate template, boolean isStatic) {
+		Parameter[] parameters = method.getParameters();
+		int offset = isStatic ? 0 : 1;
+
+		//Replace each parameter with its (Request, Response) binder, from the right so earlier positions don't move
+		for(int i = parameters.length - 1; i >= 0; i--) {
+			handle = MethodHandles.collectArguments(handle, offset + i, binderFor(parameters[i], method, template));
+		}
+
+		//Every binder takes its own (Request, Response), point them all at the same two arguments
+		MethodType type = handle.type();
+		Class<?> instanceType = isStatic ? Object.class : type.parameterType(0);
+		if(isStatic) {
+			handle = MethodHandles.dropArguments(handle, 0, Object.class);
+		}
+		int[] reorder = new int[1 + parameters.length * 2];
+		for(int i = 0; i < parameters.length; i++) {
+			reorder[1 + i * 2] = 1;
+			reorder[2 + i * 2] = 2;
+		}
+		MethodType target = MethodType.methodType(handle.type().returnType(), instanceType, Request.class, Response.class);
+		return MethodHandles.permuteArguments(handle, target, reorder);
+	}
+
+	/**
+	 * @return a handle of type (Request, Response) -&gt; the parameter's type
+	 */
+	private static MethodHandle binderFor(Parameter parameter, Method method, RouteTemplate template) {
+		Class<?> type = parameter.getType();
+
+		if(type == Request.class) {
+			return MethodHandles.dropArguments(MethodHandles.identity(Request.class), 1, Response.class);
+		}
+		if(type == Response.class) {
+			return MethodHandles.dropArguments(MethodHandles.identity(Response.class), 0, Request.class);
+		}
+
+		MethodHandle fromRequest;
+		Path path = parameter.getAnnotation(Path.class);
+		Query query = parameter.getAnnotation(Query.class);
+		Body body = parameter.getAnnotation(Body.class);
+		if(path != null) {
+			int wildcard = template.indexOfWildcard(path.value());
+			if(wildcard == -1) {
+				throw new IllegalArgumentException("@Path(\"" + path.value() + "\") on " + method.getName() + " is not a wildcard in '" + template.getValue() + "'");
+			}
+			String what = "Path parameter " + path.value();
+			fromRequest = convert(MethodHandles.insertArguments(WILDCARD, 0, template, wildcard), type, what, method);
+		}
+		else if(query != null) {
+			String what = "Query parameter " + query.value();
+			String fallback = query.defaultValue().isEmpty() ? null : query.defaultValue();
+			MethodHandle raw = MethodHandles.insertArguments(QUERY, 0, query.value());
+			raw = MethodHandles.filterReturnValue(raw, MethodHandles.insertArguments(OR_DEFAULT, 0, fallback, query.required() && fallback == null, what));
+			fromRequest = convert(raw, type, what, method);
+		}
+		else if(body != null) {
+			if(type == String.class) {
+				fromRequest = BODY_TEXT;
+			}
+			else if(type == byte[].class) {
+				fromRequest = BODY_BYTES;
+			}
+			else if(type == InputStream.class) {
+				fromRequest = BODY_STREAM;
+			}
+			else if(type == Parameters.class) {
+				fromRequest = BODY_FORM;
+			}
+			else if(type.isPrimitive()) {
+				throw new IllegalArgumentException("@Body on " + method.getName() + " can't be a primitive");
+			}
+			else {
+				fromRequest = MethodHandles.insertArguments(BODY_JSON, 1, parameter.getParameterizedType()).asType(MethodType.methodType(type, Request.class));
+			}
+		}
+		else {
+			throw new IllegalArgumentException("Parameter " + parameter.getName() + " of " + method.getName() + " must be Request, Response, or have @Path, @Query or @Body");
+		}
+
+		return MethodHandles.dropArguments(fromRequest, 1, Response.class);
+	}
+
+	/**
+	 * Add the conversion from String to the parameter type onto a (Request) -&gt; String handle
+	 */
+	private static MethodHandle convert(MethodHandle raw, Class<?> type, String what, Method method) {
+		MethodHandle converter;
+		if(type == String.class) {
+			return raw;
+		}
+		else if(type == int.class) {
+			converter = TO_INT;
+		}
+		else if(type == long.class) {
+			converter = TO_LONG;
+		}
+		else if(type == double.class) {
+			converter = TO_DOUBLE;
+		}
+		else if(type == float.class) {
+			converter = TO_FLOAT;
+		}
+		else if(type == boolean.class) {
+			converter = TO_BOOLEAN;
+		}
+		else if(type == Integer.class) {
+			converter = TO_INTEGER_BOXED;
+		}
+		else if(type == Long.class) {
+			converter = TO_LONG_BOXED;
+		}
+		else if(type == Double.class) {
+			converter = TO_DOUBLE_BOXED;
+		}
+		else if(type == Float.class) {
+			converter = TO_FLOAT_BOXED;
+		}
+		else if(type == Boolean.class) {
+			converter = TO_BOOLEAN_BOXED;
+		}
+		else if(type.isEnum()) {
+			converter = MethodHandles.insertArguments(TO_ENUM, 0, type).asType(MethodType.methodType(type, String.class, String.class));
+		}
+		else {
+			throw new IllegalArgumentException(what + " on " + method.getName() + " has type " + type.getName() + ", which can't be converted from a String");
+		}
+		return MethodHandles.filterReturnValue(raw, MethodHandles.insertArguments(converter, 0, what));
+	}
+
+	private static String wildcard(RouteTemplate template, int wildcard, Request req) {
+		return template.getWildcard(req.getPath(), wildcard);
+	}
+
+	private static String query(String name, Request req) {
+		return req.getQuery(name);
+	}
+
+	private static String orDefault(String fallback, boolean required, String what, String value) {
+		if(value != null) {
+			return value;
+		}
+		if(required) {
+			throw new HttpStatusException(StatusCode.BAD_REQUEST, "400. " + what + " is missing.");
+		}
+		return fallback;
+	}
+
+	private static HttpStatusException badRequest(String what, String value, String expected) {
+		return new HttpStatusException(StatusCode.BAD_REQUEST, "400. " + what + " must be " + expected + ", but was '" + value + "'.");
+	}
+
+	private static int toInt(String what, String value) {
+		if(value == null) {
+			return 0;
+		}
+		try {
+			return Integer.parseInt(value);
+		}
+		catch(NumberFormatException e) {
+			throw badRequest(what, value, "a whole number");
+		}
+	}
+
+	private static long toLong(String what, String value) {
+		if(value == null) {
+			return 0;
+		}
+		try {
+			return Long.parseLong(value);
+		}
+		catch(NumberFormatException e) {
+			throw badRequest(what, value, "a whole number");
+		}
+	}
+
+	private static double toDouble(String what, String value) {
+		if(value == null) {
+			return 0;
+		}
+		try {
+			return Double.parseDouble(value);
+		}
+		catch(NumberFormatException e) {
+			throw badRequest(what, value, "a number");
+		}
+	}
+
+	private static float toFloat(String what, String value) {
+		if(value == null) {
+			return 0;
+		}
+		try {
+			return Float.parseFloat(value);
+		}
+		catch(NumberFormatException e) {
+			throw badRequest(what, value, "a number");
+		}
+	}
+
+	private static boolean toBoolean(String what, String value) {
+		if(value == null) {
+			return false;
+		}
+		switch(value.toLowerCase()) {
+		case "":
+		case "true":
+		case "1":
+		case "yes":
+		case "on":
+			return true;
+		case "false":
+		case "0":
+		case "no":
+		case "off":
+			return false;
+		default:
+			throw badRequest(what, value, "true or false");
+		}
+	}
+
+	private static Integer toIntegerBoxed(String what, String value) {
+		return value == null ? null : toInt(what, value);
+	}
+
+	private static Long toLongBoxed(String what, String value) {
+		return value == null ? null : toLong(what, value);
+	}
+
+	private static Double toDoubleBoxed(String what, String value) {
+		return value == null ? null : toDouble(what, value);
+	}
+
+	private static Float toFloatBoxed(String what, String value) {
+		return value == null ? null : toFloat(what, value);
+	}
+
+	private static Boolean toBooleanBoxed(String what, String value) {
+		return value == null ? null : toBoolean(what, value);
+	}
+
+	private static Enum<?> toEnum(Class<?> type, String what, String value) {
+		if(value == null) {
+			return null;
+		}
+		for(Object constant : type.getEnumConstants()) {
+			if(((Enum<?>) constant).name().equalsIgnoreCase(value)) {
+				return (Enum<?>) constant;
+			}
+		}
+		throw badRequest(what, value, "one of " + Arrays.toString(type.getEnumConstants()));
+	}
+
+}
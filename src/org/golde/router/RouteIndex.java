@@ -0,0 +1,192 @@
+package org.golde.router;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.golde.router.enums.RequestMethod;
+
+/**
+ * A segment trie of every registered route, one tree per request method.
+ * Routes are compiled once when they are registered, so looking up a request only costs as much as the depth of its path.
+ * Matching follows the old linear scan: case insensitive, trailing slashes are ignored, and the first registered route wins.
+ * @author Eric Golde
+ *
+ */
+class RouteIndex {
+
+	private final Map<RequestMethod, Node> roots = new EnumMap<RequestMethod, Node>(RequestMethod.class);
+
+	/**
+	 * Increases with every route added, so we know which route was registered first
+	 */
+	private int nextOrder = 0;
+
+	/**
+	 * Add a route to the index
+	 * @param holder the route to add
+	 * @return false if the route could never match anything, and was not added
+	 */
+	boolean add(MethodHolder holder) {
+		RouteTemplate template = holder.template;
+		if(template.isMalformed()) {
+			System.err.println("Route '" + template.getValue() + "' on " + holder.clazz.getName() + "#" + holder.method.getName() + " has a wildcard without a matching {}. It will never be matched.");
+			return false;
+		}
+
+		int order = nextOrder++;
+		Node node = roots.computeIfAbsent(holder.route.method(), m -> new Node());
+		node.offer(order);
+		for(int i = 0; i < template.getSegmentCount(); i++) {
+			node = node.child(template.getSegment(i));
+			node.offer(order);
+		}
+
+		//First registered wins, anything after it can never be reached
+		if(node.holder == null) {
+			node.holder = holder;
+			node.order = order;
+		}
+		return true;
+	}
+
+	/**
+	 * Find the route that should handle the given path
+	 * @param method the request method
+	 * @param path the path of the request, without the query parameters
+	 * @return the first registered route that matches, or null if nothing matches
+	 */
+	MethodHolder find(RequestMethod method, String path) {
+		Node root = roots.get(method);
+		if(root == null) {
+			return null;
+		}
+		return find(root, normalize(path));
+	}
+
+	/**
+	 * Find every request method that has a route for the path, to answer a request with the wrong method with 405 Method Not Allowed
+	 * @param path the path of the request, without the query parameters
+	 * @return the methods, empty if the path has no route at all
+	 */
+	Set<RequestMethod> allowedMethods(String path) {
+		Set<RequestMethod> allowed = EnumSet.noneOf(RequestMethod.class);
+		if(roots.isEmpty()) {
+			return allowed;
+		}
+
+		path = normalize(path);
+		for(Map.Entry<RequestMethod, Node> root : roots.entrySet()) {
+			if(find(root.getValue(), path) != null) {
+				allowed.add(root.getKey());
+			}
+		}
+		return allowed;
+	}
+
+	/**
+	 * @return the path in lower case, without its leading slash
+	 */
+	private static String normalize(String path) {
+		if(path.length() != 0 && path.charAt(0) == '/') {
+			path = path.substring(1);
+		}
+		return path.toLowerCase();
+	}
+
+	private static MethodHolder find(Node root, String path) {
+		//Trailing slashes never create a segment
+		int end = path.length();
+		while(end > 0 && path.charAt(end - 1) == '/') {
+			end--;
+		}
+
+		Node found;
+		if(end == 0 && path.length() != 0) {
+			//Path was only slashes, so there are no segments at all
+			found = root;
+		}
+		else {
+			found = search(root, path, 0, end, Integer.MAX_VALUE);
+		}
+
+		return found == null ? null : found.holder;
+	}
+
+	/**
+	 * Walk down the tree, trying literal children before wildcards.
+	 * Branches that only contain routes registered after the best match so far are skipped.
+	 */
+	private static Node search(Node node, String path, int start, int end, int bestOrder) {
+		int slash = path.indexOf('/', start);
+		if(slash == -1 || slash > end) {
+			slash = end;
+		}
+		boolean last = slash == end;
+
+		Node best = null;
+
+		if(node.literals != null) {
+			Node literal = node.literals.get(path.substring(start, slash));
+			if(literal != null && literal.minOrder < bestOrder) {
+				best = last ? literal.terminal() : search(literal, path, slash + 1, end, bestOrder);
+				if(best != null) {
+					bestOrder = best.order;
+				}
+			}
+		}
+
+		Node wildcard = node.wildcard;
+		if(wildcard != null && wildcard.minOrder < bestOrder) {
+			Node found = last ? wildcard.terminal() : search(wildcard, path, slash + 1, end, bestOrder);
+			if(found != null && found.order < bestOrder) {
+				best = found;
+			}
+		}
+
+		return best;
+	}
+
+	private static class Node {
+		private Map<String, Node> literals;
+		private Node wildcard;
+
+		private MethodHolder holder;
+		private int order = Integer.MAX_VALUE;
+
+		/**
+		 * The smallest order of any route at or below this node
+		 */
+		private int minOrder = Integer.MAX_VALUE;
+
+		/**
+		 * @param segment the lower case segment, or null for a wildcard
+		 */
+		private Node child(String segment) {
+			if(segment == null) {
+				if(wildcard == null) {
+					wildcard = new Node();
+				}
+				return wildcard;
+			}
+
+			if(literals == null) {
+				literals = new HashMap<String, Node>();
+			}
+			return literals.computeIfAbsent(segment, s -> new Node());
+		}
+
+		private void offer(int order) {
+			if(order < minOrder) {
+				minOrder = order;
+			}
+		}
+
+		private Node terminal() {
+			return holder == null ? null : this;
+		}
+	}
+
+}
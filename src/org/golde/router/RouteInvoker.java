@@ -0,0 +1,93 @@
+package org.golde.router;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import org.golde.router.objects.Request;
+import org.golde.router.objects.Response;
+
+/**
+ * Calls a @Route method through a MethodHandle that is looked up once when the route is registered,
+ * instead of going through Method.invoke and Class.newInstance on every request.
+ * @author Eric Golde
+ *
+ */
+final class RouteInvoker {
+
+	private static final MethodType HANDLER_TYPE = MethodType.methodType(Object.class, Object.class, Request.class, Response.class);
+
+	/**
+	 * (Object instance, Request, Response) -> Object
+	 */
+	private final MethodHandle handle;
+
+	/**
+	 * () -> Object, only set when we need a fresh instance for every request
+	 */
+	private final MethodHandle constructor;
+
+	/**
+	 * The instance every request is called on. Null for static methods, or if we create a fresh instance for every request
+	 */
+	private final Object instance;
+
+	private RouteInvoker(MethodHandle handle, MethodHandle constructor, Object instance) {
+		this.handle = handle;
+		this.constructor = constructor;
+		this.instance = instance;
+	}
+
+	/**
+	 * Bind a route method
+	 * @param method the @Route annotated method
+	 * @param type the class that was registered, used to create instances
+	 * @param instance the instance to call the method on, or null to create a new instance for every request
+	 * @param template the compiled route, for @Path parameters
+	 * @return the invoker
+	 * @throws ReflectiveOperationException if the method can not be accessed, or the class has no 0 arg constructor
+	 * @throws IllegalArgumentException if one of the method's parameters can't be bound
+	 */
+	static RouteInvoker bind(Method method, Class<?> type, Object instance, RouteTemplate template) throws ReflectiveOperationException {
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+		method.setAccessible(true);
+		boolean isStatic = Modifier.isStatic(method.getModifiers());
+		MethodHandle handle = RouteBinders.bind(lookup.unreflect(method), method, template, isStatic);
+
+		if(isStatic) {
+			return new RouteInvoker(handle.asType(HANDLER_TYPE), null, null);
+		}
+
+		handle = handle.asType(HANDLER_TYPE);
+
+		if(instance != null) {
+			return new RouteInvoker(handle, null, instance);
+		}
+
+		//if we don't have an existing intance object, we create one with a 0 arg constructor
+		Constructor<?> constructor = type.getDeclaredConstructor();
+		constructor.setAccessible(true);
+		MethodHandle constructorHandle = lookup.unreflectConstructor(constructor).asType(MethodType.methodType(Object.class));
+		return new RouteInvoker(handle, constructorHandle, null);
+	}
+
+	/**
+	 * Call the route method
+	 * @param req the request
+	 * @param res the response
+	 * @return whatever the method returned, null for void methods
+	 * @throws Throwable anything the route method, or its constructor threw
+	 */
+	Object invoke(Request req, Response res) throws Throwable {
+		Object target = instance;
+		if(constructor != null) {
+			target = constructor.invokeExact();
+		}
+		return handle.invokeExact(target, req, res);
+	}
+
+}
@@ -0,0 +1,228 @@
+package org.golde.router;
+
+import java.util.Map;
+
+import lombok.Getter;
+
+/**
+ * A compiled @Route value. The value is split up once when the route is registered,
+ * and the position of every wildcard is remembered so requests never need to split the route again.
+ * Instances are immutable, and safe to share between threads.
+ * @author Eric Golde
+ *
+ */
+public final class RouteTemplate {
+
+	/**
+	 * A template with no segments and no wildcards, used when no route matched.
+	 */
+	public static final RouteTemplate EMPTY = new RouteTemplate("", new String[0], new String[0], new int[0], false);
+
+	/**
+	 * The value of the @Route this template was compiled from
+	 * @return the raw route value
+	 */
+	@Getter private final String value;
+
+	/**
+	 * Lower case segments of the route, with the leading / removed. Wildcard segments are null.
+	 */
+	private final String[] segments;
+
+	private final String[] wildcardNames;
+	private final int[] wildcardIndexes;
+
+	/**
+	 * True if a segment has a { without a } or the other way around. These routes can never be matched.
+	 */
+	@Getter private final boolean malformed;
+
+	private RouteTemplate(String value, String[] segments, String[] wildcardNames, int[] wildcardIndexes, boolean malformed) {
+		this.value = value;
+		this.segments = segments;
+		this.wildcardNames = wildcardNames;
+		this.wildcardIndexes = wildcardIndexes;
+		this.malformed = malformed;
+	}
+
+	/**
+	 * Compile a @Route value into a template
+	 * @param value the route value, for example "users/{id}"
+	 * @return the compiled template
+	 */
+	public static RouteTemplate compile(String value) {
+		String routeValue = value;
+
+		//incase we fuck up, and add a / at the begining out of habit
+		if(routeValue.length() != 0 && routeValue.charAt(0) == '/') {
+			routeValue = routeValue.substring(1);
+		}
+
+		String[] raw = routeValue.split("/");
+		String[] segments = new String[raw.length];
+		int wildcardCount = 0;
+		boolean malformed = false;
+
+		for(int i = 0; i < raw.length; i++) {
+			String segment = raw[i];
+			if(isWildcard(segment)) {
+				wildcardCount++;
+			}
+			else {
+				segments[i] = segment.toLowerCase();
+				//Must have closing {}
+				if(segment.length() != 0 && (segment.charAt(0) == '{' || segment.charAt(segment.length() - 1) == '}')) {
+					malformed = true;
+				}
+			}
+		}
+
+		String[] wildcardNames = new String[wildcardCount];
+		int[] wildcardIndexes = new int[wildcardCount];
+		int w = 0;
+		for(int i = 0; i < raw.length; i++) {
+			if(segments[i] == null) {
+				wildcardNames[w] = raw[i].substring(1, raw[i].length() - 1);
+				wildcardIndexes[w] = i;
+				w++;
+			}
+		}
+
+		return new RouteTemplate(value, segments, wildcardNames, wildcardIndexes, malformed);
+	}
+
+	/**
+	 * @return how many segments the route has
+	 */
+	public int getSegmentCount() {
+		return segments.length;
+	}
+
+	/**
+	 * Get a literal segment of the route
+	 * @param index the index of the segment
+	 * @return the lower case segment, or null if the segment is a wildcard
+	 */
+	public String getSegment(int index) {
+		return segments[index];
+	}
+
+	/**
+	 * @return how many wildcards the route has
+	 */
+	public int getWildcardCount() {
+		return wildcardNames.length;
+	}
+
+	/**
+	 * Get the name of a wildcard, without the {}
+	 * @param wildcard the index of the wildcard, from 0 to {@link #getWildcardCount()}
+	 * @return the name of the wildcard
+	 */
+	public String getWildcardName(int wildcard) {
+		return wildcardNames[wildcard];
+	}
+
+	/**
+	 * Get the index of the segment a wildcard is in
+	 * @param wildcard the index of the wildcard, from 0 to {@link #getWildcardCount()}
+	 * @return the segment index
+	 */
+	public int getWildcardSegment(int wildcard) {
+		return wildcardIndexes[wildcard];
+	}
+
+	/**
+	 * Copy the value of every wildcard out of a request path that matched this template
+	 * @param path the path of the request, without the query parameters
+	 * @param into the map to put the wildcards in
+	 */
+	public void fillWildcards(String path, Map<String, String> into) {
+		if(wildcardNames.length == 0) {
+			return;
+		}
+
+		int start = path.length() != 0 && path.charAt(0) == '/' ? 1 : 0;
+		int segment = 0;
+		int w = 0;
+		while(w < wildcardIndexes.length && start <= path.length()) {
+			int end = path.indexOf('/', start);
+			if(end == -1) {
+				end = path.length();
+			}
+
+			if(wildcardIndexes[w] == segment) {
+				into.put(wildcardNames[w], path.substring(start, end));
+				w++;
+			}
+
+			segment++;
+			start = end + 1;
+		}
+	}
+
+	/**
+	 * Get the value of a single wildcard out of a request path that matched this template, without building a map
+	 * @param path the path of the request, without the query parameters
+	 * @param name the name of the wildcard, without the {}
+	 * @return the value, or null if there is no wildcard with that name
+	 */
+	public String getWildcard(String path, String name) {
+		for(int w = 0; w < wildcardNames.length; w++) {
+			if(wildcardNames[w].equals(name)) {
+				return segment(path, wildcardIndexes[w]);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Get the index of a wildcard by name, so it can be looked up with {@link #getWildcard(String, int)} without comparing names again
+	 * @param name the name of the wildcard, without the {}
+	 * @return the index of the wildcard, or -1 if there is none with that name
+	 */
+	public int indexOfWildcard(String name) {
+		for(int w = 0; w < wildcardNames.length; w++) {
+			if(wildcardNames[w].equals(name)) {
+				return w;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Get the value of a wildcard by index out of a request path that matched this template
+	 * @param path the path of the request, without the query parameters
+	 * @param wildcard the index of the wildcard, from {@link #indexOfWildcard(String)}
+	 * @return the value, or null if the path is not that long
+	 */
+	public String getWildcard(String path, int wildcard) {
+		return segment(path, wildcardIndexes[wildcard]);
+	}
+
+	/**
+	 * @return the segment of the path at the index, or null if the path is not that long
+	 */
+	private static String segment(String path, int index) {
+		int start = path.length() != 0 && path.charAt(0) == '/' ? 1 : 0;
+		for(int i = 0; i < index; i++) {
+			int slash = path.indexOf('/', start);
+			if(slash == -1) {
+				return null;
+			}
+			start = slash + 1;
+		}
+		int end = path.indexOf('/', start);
+		return path.substring(start, end == -1 ? path.length() : end);
+	}
+
+	static boolean isWildcard(String segment) {
+		return segment.length() > 1 && segment.charAt(0) == '{' && segment.charAt(segment.length() - 1) == '}';
+	}
+
+	@Override
+	public String toString() {
+		return value;
+	}
+
+}
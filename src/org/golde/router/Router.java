@@ -1,27 +1,48 @@
 package org.golde.router;
 
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
-import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.concurrent.Executors;
-
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+import org.golde.router.annotations.RateLimit;
 import org.golde.router.annotations.Route;
+import org.golde.router.enums.RequestMethod;
+import org.golde.router.enums.RouterState;
+import org.golde.router.engine.Exchange;
+import org.golde.router.engine.ExchangeHandler;
+import org.golde.router.engine.HttpEngine;
+import org.golde.router.engine.SunHttpEngine;
 import org.golde.router.enums.StatusCode;
+import org.golde.router.exceptions.HttpStatusException;
+import org.golde.router.metrics.RouteMetrics;
+import org.golde.router.metrics.RouterMetrics;
+import org.golde.router.objects.CachedResponse;
+import org.golde.router.objects.JsonAdapters;
 import org.golde.router.objects.Request;
 import org.golde.router.objects.Response;
+import org.golde.router.objects.ResponseCache;
 import org.golde.router.routes.Route404;
 import org.golde.router.routes.RouteDefault404;
+import org.golde.router.routes.StaticMount;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.sun.net.httpserver.HttpExchange;
-import com.sun.net.httpserver.HttpHandler;
-import com.sun.net.httpserver.HttpServer;
 
-import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -33,78 +54,431 @@ import lombok.Setter;
 public class Router {
 
 	/**
-	 * Internal com.sun http server
+	 * The http server underneath the router
 	 */
-	private HttpServer server;
+	@Getter
+	private final HttpEngine engine;
 
+	/**
+	 * Every registered route, in the order they were registered. Only touched while holding routesLock.
+	 */
 	private List<MethodHolder> allMethods = new ArrayList<MethodHolder>();
 
+	/**
+	 * The routes each register() call added, keyed by the class or object that was registered, so they can be unregistered
+	 */
+	private final Map<Object, List<MethodHolder>> registrations = new IdentityHashMap<Object, List<MethodHolder>>();
+
+	private final Object routesLock = new Object();
+
+	/**
+	 * Every route in allMethods, compiled into a tree so we don't need to check each one on every request.
+	 * Never changed once it is built. Registering or unregistering builds a new one and swaps it in, so requests never see a half built tree.
+	 */
+	private volatile RouteIndex routeIndex = new RouteIndex();
+
+	/**
+	 * Where the router is in its life. Ready for traffic only while RUNNING.
+	 * @return the state
+	 */
+	@Getter
+	private volatile RouterState state = RouterState.CREATED;
+
+	/**
+	 * True if we created the executor in start(), and so have to shut it down in stop()
+	 */
+	private boolean ownsExecutor = false;
+
 	/**
 	 * Gson that is used for any JSON parsing endpoints, or endpoints that return json.
-	 * By default, we disable html escaping, pretty print, and serialize nulls.
+	 * By default, we disable html escaping, pretty print, and serialize nulls. Use {@link #compactGson()} in production to send less over the wire.
 	 * Routes can access this by using {@link Response#getRouter().getGson()} or {@link Request#getRouter().getGson()}
 	 */
 	@Getter
 	@Setter
-	private Gson gson = new GsonBuilder().disableHtmlEscaping().setPrettyPrinting().serializeNulls().create();
+	private Gson gson = prettyGson();
+
+	/**
+	 * Gson instances routes can pick by name with @Route(gson = "name"). "pretty" and "compact" are always there.
+	 */
+	private final Map<String, Gson> gsonProfiles = new ConcurrentHashMap<String, Gson>();
+
+	/**
+	 * Cached adapters for requests that didn't match a route, like 404 pages
+	 */
+	@Getter
+	private final JsonAdapters jsonAdapters = new JsonAdapters(this, null);
 
 	@Setter
 	@Getter
 	private Route404 route404 = new RouteDefault404();
 
 	/**
-	 * Create a router on a specific port
+	 * When a class is registered (instead of an object), create a single instance of it and call every route on that instance.
+	 * When false, a new instance is created for every request, like before.
+	 * Route classes must be thread safe if this is turned on. Only affects classes registered after it is changed.
+	 */
+	@Setter
+	@Getter
+	private boolean reuseInstances = false;
+
+	/**
+	 * The biggest request body routes will read, in bytes. Bigger requests are answered with 413 Payload Too Large. -1 for no limit.
+	 */
+	@Setter
+	@Getter
+	private long maxBodySize = 16 * 1024 * 1024;
+
+	/**
+	 * Static mounts, longest prefix first. Replaced with a new array under routesLock when a mount is added, so requests can read it without a lock.
+	 */
+	private volatile StaticMount[] staticMounts = new StaticMount[0];
+
+	/**
+	 * Compress responses with gzip or deflate when the client sends Accept-Encoding.
+	 * Only applies to content types in {@link #getCompressionTypes()}, and bodies of at least {@link #getCompressionMinSize()} bytes.
+	 */
+	@Setter
+	@Getter
+	private boolean compression = true;
+
+	/**
+	 * Bodies smaller than this are sent as is, compressing them saves less than it costs
+	 */
+	@Setter
+	@Getter
+	private int compressionMinSize = 1024;
+
+	/**
+	 * The deflate level, from 1 (fastest) to 9 (smallest)
+	 */
+	@Setter
+	@Getter
+	private int compressionLevel = 6;
+
+	/**
+	 * Content types that are worth compressing. Add to this set to compress more types, text/* style entries match a whole family.
+	 * Images, video and archives are already compressed, and are left out on purpose.
+	 */
+	@Getter
+	private final Set<String> compressionTypes = new HashSet<String>(Arrays.asList("text/*", "application/json", "application/javascript", "application/xml", "application/xhtml+xml", "image/svg+xml"));
+
+	private final List<MiddlewareHolder> middlewareList = new ArrayList<MiddlewareHolder>();
+
+	/**
+	 * middlewareList, copied into a new array by every call to use(), so requests read it without a lock and never touch the list
+	 */
+	private volatile MiddlewareHolder[] middleware = new MiddlewareHolder[0];
+
+	/**
+	 * How many bytes of file content each static mount keeps in memory. Only affects mounts created after it is changed.
+	 */
+	@Setter
+	@Getter
+	private long staticCacheSize = 32 * 1024 * 1024;
+
+	/**
+	 * Files bigger than this are never kept in memory by static mounts, and are streamed from disk instead.
+	 */
+	@Setter
+	@Getter
+	private long staticMaxCachedFileSize = 256 * 1024;
+
+	/**
+	 * The executor requests are run on. Defaults to {@link RouterExecutors#fixed(int)} with 20 threads.
+	 * See {@link RouterExecutors} for virtual threads, or a pool with a queue limit. Must be set before {@link #start()}.
+	 */
+	@Setter
+	@Getter
+	private Executor executor;
+
+	/**
+	 * Request counts, latency and status codes for every route. Register a {@link org.golde.router.routes.MetricsRoute} to serve them at /metrics.
+	 */
+	@Getter
+	private final RouterMetrics metrics = new RouterMetrics(this::getExecutor);
+
+	/**
+	 * Milliseconds a route that returns a CompletableFuture has to finish, before it is answered with 408 Request Timeout. -1 waits forever.
+	 * Routes can pick their own with @Route(timeout = ...).
+	 */
+	@Setter
+	@Getter
+	private long asyncTimeout = 30000;
+
+	/**
+	 * Limits every request, matched or not, before any route runs. Null for no limit. Routes can add their own with @Route(rateLimit = ...).
+	 */
+	@Setter
+	@Getter
+	private volatile RateLimiter rateLimiter;
+
+	/**
+	 * Responses of routes with @Route(cache = ...). Holds 64MB by default, change it with getResponseCache().setMaxBytes().
+	 */
+	@Getter
+	private final ResponseCache responseCache = new ResponseCache(64 * 1024 * 1024);
+
+	/**
+	 * Answer a request whose path only has routes under other methods with 405 Method Not Allowed and an Allow header, instead of the 404 page
+	 */
+	@Setter
+	@Getter
+	private boolean methodNotAllowed = true;
+
+	/**
+	 * Reuse the Request and Response objects of requests that are done, one of each per thread, instead of making new ones for every request.
+	 * Only turn this on if no route or middleware keeps the request or response after it returns, except by returning a CompletableFuture or opening a stream, which are never reused.
+	 * Gains nothing with virtual threads, which are not reused either.
+	 */
+	@Setter
+	@Getter
+	private boolean recycleRequests = false;
+
+	/**
+	 * With recycleRequests, remember where each request was released, so using it afterwards says where it finished. Costs a stack trace per request.
+	 */
+	@Setter
+	@Getter
+	private boolean recycleDebug = false;
+
+	private final RequestPool requestPool = new RequestPool(this);
+
+	/**
+	 * Create a router on a specific port, using the com.sun http server
 	 * @param port port for http server to be on
 	 * @throws IOException if it fails to create a InetSocketAddress
 	 */
 	public Router(int port) throws IOException {
-		server = HttpServer.create(new InetSocketAddress(port), 0);
+		this(new SunHttpEngine(port));
+	}
+
+	/**
+	 * Create a router on a specific http engine. For example, new Router(new NioHttpEngine(8080))
+	 * @param engine the http server to use
+	 */
+	public Router(HttpEngine engine) {
+		this.engine = engine;
+		gsonProfiles.put("pretty", prettyGson());
+		gsonProfiles.put("compact", compactGson());
+	}
+
+	/**
+	 * The default Gson. Pretty printed, with nulls, which is easy to read while developing.
+	 * @return a new Gson
+	 */
+	public static Gson prettyGson() {
+		return new GsonBuilder().disableHtmlEscaping().setPrettyPrinting().serializeNulls().create();
 	}
 
 	/**
-	 * Register a class that contains functions @Route annotated functions
+	 * Gson for production. No indentation and no null fields, so responses are as small as they can be.
+	 * @return a new Gson
+	 */
+	public static Gson compactGson() {
+		return new GsonBuilder().disableHtmlEscaping().create();
+	}
+
+	/**
+	 * Add a Gson that routes can pick with @Route(gson = "name"), instead of the router's Gson. Must be added before the routes that use it are registered.
+	 * @param name the name routes use
+	 * @param gson the Gson
+	 */
+	public void addGson(String name, Gson gson) {
+		gsonProfiles.put(name, gson);
+	}
+
+	/**
+	 * Register a class that contains functions @Route annotated functions. Safe to call while the router is running.
 	 * @param clazz Class to register
 	 */
 	public void register(Class<?> clazz) {
-		allMethods.addAll(getMethods(clazz, null));
+		synchronized(routesLock) {
+			addMethods(clazz, getMethods(clazz, null));
+		}
 	}
 	
 	/**
-	 * Register an object that contains functions @Route annotated functions
+	 * Register an object that contains functions @Route annotated functions. Safe to call while the router is running.
 	 * @param instance Object to register
 	 */
 	public void register(Object instance) {
-		allMethods.addAll(getMethods(instance.getClass(), instance));
+		synchronized(routesLock) {
+			addMethods(instance, getMethods(instance.getClass(), instance));
+		}
+	}
+
+	/**
+	 * Remove every route that was added by registering a class or object. Safe to call while the router is running,
+	 * requests that already found one of the routes still finish on it. Clears the response cache.
+	 * @param registered the exact class or object that was passed to register()
+	 * @return false if it was never registered
+	 */
+	public boolean unregister(Object registered) {
+		synchronized(routesLock) {
+			List<MethodHolder> removed = registrations.remove(registered);
+			if(removed == null) {
+				return false;
+			}
+
+			List<MethodHolder> remaining = new ArrayList<MethodHolder>(allMethods);
+			remaining.removeAll(removed);
+			RouteIndex index = new RouteIndex();
+			for(MethodHolder holder : remaining) {
+				index.add(holder);
+			}
+			allMethods = remaining;
+			routeIndex = index;
+
+			for(MethodHolder holder : removed) {
+				metrics.removeRoute(holder.metrics);
+			}
+		}
+		responseCache.clear();
+		return true;
+	}
+
+	/**
+	 * Serve every file inside a directory. For example, serveStatic("assets", Paths.get("web")) serves web/css/site.css at /assets/css/site.css.
+	 * Routes registered with @Route always win over files. Directories serve their index.html.
+	 * Hot files are kept in memory (see {@link #setStaticCacheSize(long)}), and precompressed .br and .gz siblings are sent to clients that accept them.
+	 * @param prefix the url prefix, or "" to serve from the root
+	 * @param root the directory to serve
+	 * @return the mount
+	 */
+	public StaticMount serveStatic(String prefix, Path root) {
+		StaticMount mount = new StaticMount(prefix, root, staticCacheSize, staticMaxCachedFileSize);
+		synchronized(routesLock) {
+			StaticMount[] mounts = Arrays.copyOf(staticMounts, staticMounts.length + 1);
+			mounts[mounts.length - 1] = mount;
+			//Longest prefix first, so /assets/img wins over /assets
+			Arrays.sort(mounts, (a, b) -> b.getPrefix().length() - a.getPrefix().length());
+			staticMounts = mounts;
+		}
+		return mount;
+	}
+
+	/**
+	 * Add middleware that runs before every route, in the order it was added. See {@link Middleware}.
+	 * @param middleware the middleware
+	 */
+	public void use(Middleware middleware) {
+		use("", middleware);
+	}
+
+	/**
+	 * Add middleware that only runs for paths inside a prefix. use("api", auth) runs for /api and /api/users, but not /apis.
+	 * @param prefix the path prefix
+	 * @param middleware the middleware
+	 */
+	public void use(String prefix, Middleware middleware) {
+		synchronized(middlewareList) {
+			middlewareList.add(new MiddlewareHolder(prefix, middleware));
+			this.middleware = middlewareList.toArray(new MiddlewareHolder[0]);
+		}
+	}
+
+	/**
+	 * Build a new index with the routes added, and swap it in. Must hold routesLock.
+	 */
+	private void addMethods(Object registered, List<MethodHolder> methods) {
+		RouteIndex index = new RouteIndex();
+		for(MethodHolder holder : allMethods) {
+			index.add(holder);
+		}
+
+		List<MethodHolder> all = new ArrayList<MethodHolder>(allMethods);
+		List<MethodHolder> added = registrations.computeIfAbsent(registered, r -> new ArrayList<MethodHolder>());
+		for(MethodHolder holder : methods) {
+			if(index.add(holder)) {
+				all.add(holder);
+				added.add(holder);
+				metrics.addRoute(holder.metrics);
+			}
+		}
+		if(added.isEmpty()) {
+			registrations.remove(registered);
+		}
+
+		allMethods = all;
+		routeIndex = index;
 	}
 
 	/**
 	 * Start up the http server
+	 * @throws UncheckedIOException if the http server fails to start
 	 */
 	public void start() {
+		if(state != RouterState.CREATED) {
+			throw new IllegalStateException("The router was already started");
+		}
 
 		final Router routerTempInstance = this;
-		server.createContext("/", new HttpHandler() {
+		ExchangeHandler handler = new ExchangeHandler() {
 
 			@Override
-			public void handle(HttpExchange exchange) throws IOException {
+			public void handle(Exchange exchange) throws IOException {
 				try {
 
+					if(state != RouterState.RUNNING) {
+						//A keep-alive connection that sent another request while we are stopping
+						Response res = new Response(routerTempInstance, exchange).setStatusCode(StatusCode.SERVICE_UNAVAILABLE);
+						res.getHeaders().set("Connection", "close");
+						res.sendText("503. Server is shutting down.");
+						metrics.recordRejected(metrics.getUnmatched(), res.getSentStatus(), res.getBytesWritten());
+						return;
+					}
 
-					//get rid of first argument in the array, then split it up into a list of arguments
+					if(RouterExecutors.isShedding()) {
+						//executor is full, don't even try to run the route
+						Response res = new Response(routerTempInstance, exchange).setStatusCode(StatusCode.SERVICE_UNAVAILABLE);
+						res.sendText("503. Server is too busy.");
+						metrics.recordRejected(metrics.getUnmatched(), res.getSentStatus(), res.getBytesWritten());
+						return;
+					}
 
-					boolean invoked = false;
-					for(MethodHolder holder : allMethods) {
+					if(maxBodySize >= 0 && isBodyTooLarge(exchange)) {
+						//Don't bother reading a body we are going to refuse anyway
+						Response res = new Response(routerTempInstance, exchange).setStatusCode(StatusCode.PAYLOAD_TOO_LARGE);
+						res.sendText("413. Request body is too large.");
+						metrics.recordRejected(metrics.getUnmatched(), res.getSentStatus(), res.getBytesWritten());
+						return;
+					}
 
-						if(doesMatch(exchange, holder.route)){
-							//execute
-							invokeMethod(exchange, holder);
-							invoked = true;
-						}
+					RateLimiter limiter = rateLimiter;
+					if(limiter != null && isRateLimited(limiter, exchange, metrics.getUnmatched())) {
+						return;
+					}
+
+					//Split the request target once, matching and the request share it
+					String uri = exchange.getRequestURI();
+					int queryStart = uri.indexOf('?');
+					String path = queryStart == -1 ? uri : uri.substring(0, queryStart);
+					String query = queryStart == -1 ? null : uri.substring(queryStart + 1);
+
+					RequestMethod method = RequestMethod.fromName(exchange.getRequestMethod());
+					MethodHolder holder = method == null ? null : routeIndex.find(method, path);
+					if(holder != null && holder.limiter != null && isRateLimited(holder.limiter, exchange, holder.metrics)) {
+						return;
+					}
+
+					if(holder == null && middleware.length == 0 && staticMounts.length == 0 && route404.getClass() == RouteDefault404.class) {
+						//Nothing but the default 404 page could answer this, so don't bother building a request
+						sendMiss(exchange, path);
+						return;
 					}
 
-					if(!invoked) {
-						//handle 404
-						route404.send404(new Request(routerTempInstance, exchange, new String[0]), new Response(routerTempInstance, exchange).setStatusCode(StatusCode.NOT_FOUND));
+					RouteTemplate template = holder == null ? RouteTemplate.EMPTY : holder.template;
+					JsonAdapters json = holder == null ? jsonAdapters : holder.json;
+					if(recycleRequests) {
+						Request req = requestPool.request(exchange, template, path, query, json);
+						Response res = requestPool.response(exchange, json);
+						if(run(req, res, holder, method, path)) {
+							requestPool.release(req, res);
+						}
+					}
+					else {
+						run(new Request(routerTempInstance, exchange, template, path, query, json), new Response(routerTempInstance, exchange, json), holder, method, path);
 					}
 
 				}
@@ -114,14 +488,99 @@ public class Router {
 				}
 
 			}
-		});
+		};
 
-		server.setExecutor(Executors.newFixedThreadPool(20));
-		server.start();
+		if(executor == null) {
+			executor = RouterExecutors.fixed(20);
+			ownsExecutor = true;
+		}
+		state = RouterState.RUNNING;
+		try {
+			engine.start(handler, RouterExecutors.shedding(executor));
+		}
+		catch(IOException e) {
+			state = RouterState.STOPPED;
+			throw new UncheckedIOException("Failed to start the http server", e);
+		}
+	}
+
+	/**
+	 * Stop the router, waiting up to 30 seconds for running requests. See {@link #stop(Duration)}.
+	 */
+	public void stop() {
+		stop(Duration.ofSeconds(30));
+	}
+
+	/**
+	 * Stop accepting connections, let the requests that are still running finish, then shut everything down.
+	 * Readiness turns false right away. Async routes and open streams count as running until their response is done.
+	 * The executor is only shut down if the router created it, an executor passed to {@link #setExecutor(Executor)} is left alone.
+	 * Does nothing if the router is not running.
+	 * @param drain the longest to wait for running requests. Requests still running after that are cut off.
+	 */
+	public void stop(Duration drain) {
+		synchronized(this) {
+			if(state != RouterState.RUNNING) {
+				return;
+			}
+			state = RouterState.DRAINING;
+		}
+
+		long deadline = System.nanoTime() + drain.toNanos();
+		//Closes the listening socket, then waits for the exchanges it already has
+		engine.stop((int) Math.max(0, (drain.toMillis() + 999) / 1000));
+
+		//Responses of async routes are recorded just after they are sent, give those a moment too
+		while(metrics.getInFlight() > 0 && System.nanoTime() - deadline < 0) {
+			try {
+				Thread.sleep(10);
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+
+		if(ownsExecutor && executor instanceof ExecutorService) {
+			((ExecutorService) executor).shutdownNow();
+		}
+		for(StaticMount mount : staticMounts) {
+			mount.close();
+		}
+		state = RouterState.STOPPED;
+	}
+
+	/**
+	 * Readiness, for a load balancer or orchestrator health check
+	 * @return true if the router is running and should get traffic
+	 */
+	public boolean isReady() {
+		return state == RouterState.RUNNING;
+	}
+
+	/**
+	 * Liveness, for a health check that restarts the process when it fails
+	 * @return true unless the router was stopped
+	 */
+	public boolean isAlive() {
+		return state != RouterState.STOPPED;
 	}
 
 	private List<MethodHolder> getMethods(final Class<?> type, Object instanceObject) {
 		final List<MethodHolder> methods = new ArrayList<MethodHolder>();
+
+		if(instanceObject == null && reuseInstances) {
+			try {
+				Constructor<?> constructor = type.getDeclaredConstructor();
+				constructor.setAccessible(true);
+				instanceObject = constructor.newInstance();
+			}
+			catch(ReflectiveOperationException e) {
+				System.err.println("Failed to create an instance of " + type.getName() + ", a new instance will be created for every request instead.");
+				e.printStackTrace();
+			}
+		}
+
 		Class<?> clazz = type;
 		while (clazz != Object.class) {
 
@@ -130,7 +589,36 @@ public class Router {
 					Route annotInstance = method.getAnnotation(Route.class);
 					//System.out.println(annotInstance.value() + " - " + annotInstance.method() + " - " + type.getSimpleName() + " - " + method.getName());
 
-					MethodHolder holder = new MethodHolder(annotInstance, method, clazz, instanceObject);
+					RouteTemplate template = RouteTemplate.compile(annotInstance.value());
+					RouteInvoker invoker;
+					try {
+						invoker = RouteInvoker.bind(method, type, instanceObject, template);
+					}
+					catch(ReflectiveOperationException | RuntimeException e) {
+						System.err.println("Failed to register route " + clazz.getName() + "#" + method.getName() + ". Route parameters must be Request, Response, or have @Path, @Query or @Body, and the class needs a 0 arg constructor.");
+						e.printStackTrace();
+						continue;
+					}
+
+					Gson routeGson = null;
+					if(!annotInstance.gson().isEmpty()) {
+						routeGson = gsonProfiles.get(annotInstance.gson());
+						if(routeGson == null) {
+							System.err.println("Route " + clazz.getName() + "#" + method.getName() + " wants a Gson named '" + annotInstance.gson() + "', but there is none. Add it with addGson() first. Using the router's Gson.");
+						}
+					}
+
+					CachePolicy cache = CachePolicy.of(annotInstance.cache());
+					if(cache != null && annotInstance.method() != RequestMethod.GET) {
+						System.err.println("Route " + clazz.getName() + "#" + method.getName() + " is a " + annotInstance.method() + " route, only GET routes can be cached. It will not be cached.");
+						cache = null;
+					}
+
+					RateLimit rateLimit = annotInstance.rateLimit();
+					RateLimiter limiter = rateLimit.value() > 0 ? new RateLimiter(rateLimit.value(), rateLimit.burst(), rateLimit.header()) : null;
+
+					RouteMetrics routeMetrics = new RouteMetrics(annotInstance.method().name(), annotInstance.value());
+					MethodHolder holder = new MethodHolder(annotInstance, method, clazz, invoker, template, routeMetrics, new JsonAdapters(this, routeGson), limiter, cache);
 					if(!checkForDuplicates(methods, holder)) {
 						methods.add(holder);
 					}
@@ -174,86 +662,224 @@ public class Router {
 		return false;
 	}
 
-	@AllArgsConstructor
-	private static class MethodHolder {
-		private final Route route;
-		private final Method method;
-		private final Class<?> clazz;
-		private final Object instanceObject;
-	}
+	/**
+	 * Run the middleware and then the route, and turn anything they throw into an error response.
+	 * If the route returned a CompletionStage, the response is finished by {@link AsyncRoute} once it completes instead.
+	 * If the route opened a stream, the request is finished once the stream closes.
+	 * @return true if the request is done, false if it finishes later
+	 */
+	private boolean run(Request req, Response res, MethodHolder holder, RequestMethod method, String path) {
+		MiddlewareHolder[] middleware = this.middleware;
+		metrics.requestStarted();
+		long start = System.nanoTime();
+		boolean async = false;
+		try {
+			Object result;
+			if(middleware.length == 0) {
+				result = dispatch(req, res, holder, method, path);
+			}
+			else {
+				MiddlewareChain chain = new MiddlewareChain(this, middleware, req, res, holder, method, path);
+				chain.next();
+				result = chain.result;
+			}
 
-	private static boolean doesMatch(HttpExchange exchange, Route route) {
+			if(result instanceof CompletionStage) {
+				long timeout = holder.route.timeout() != 0 ? holder.route.timeout() : asyncTimeout;
+				async = true;
+				AsyncRoute.await(this, res, holder, start, (CompletionStage<?>) result, timeout);
+			}
+			else if(res.getStream() != null) {
+				async = true;
+				res.getStream().onClose(() -> finish(holder, res, start));
+			}
+		}
+		catch(Throwable t) {
+			sendError(res, t);
+		}
+		finally {
+			if(!async) {
+				finish(holder, res, start);
+			}
+		}
+		return !async;
+	}
 
-		if(!exchange.getRequestMethod().equalsIgnoreCase(route.method().name())) {
-			return false;
+	/**
+	 * Answer with the status of an HttpStatusException, or 500 for anything else. Only logged if the response was already sent.
+	 */
+	void sendError(Response res, Throwable t) {
+		if(t instanceof HttpStatusException) {
+			if(res.isCommitted()) {
+				t.printStackTrace();
+			}
+			else {
+				res.setStatusCode(((HttpStatusException) t).getStatusCode()).sendText(t.getMessage());
+			}
+			return;
 		}
 
-		//Make sure when comparing urls, we ignore query paramaters
-		String[] stripQueryParams = exchange.getRequestURI().toString().toLowerCase().split("\\?");
-		//System.out.println(Arrays.toString(stripQueryParams));
+		t.printStackTrace();
+		if(!res.isCommitted()) {
+			res.setStatusCode(StatusCode.INTERNAL_SERVER_ERROR).sendText("An internal error occurred while processing this request.");
+		}
+	}
 
-		String[] split = stripQueryParams[0].substring(1).toLowerCase().split("/");
+	/**
+	 * Record the request in the metrics, once its response is done
+	 */
+	void finish(MethodHolder holder, Response res, long start) {
+		res.endRecording();
+		metrics.record(holder == null ? metrics.getUnmatched() : holder.metrics, res.getSentStatus(), System.nanoTime() - start, res.getBytesWritten());
+		metrics.requestFinished();
+	}
 
-		//incase we fuck up, and add a / at the begining out of habit
-		String routeValue = route.value().toLowerCase();
-		if(routeValue.length() != 0 && routeValue.charAt(0) == '/') {
-			routeValue = routeValue.substring(1);
+	/**
+	 * Run the route. If no route matched, try the static mounts and then send the 404 page.
+	 * @return what the route returned, null for everything else
+	 */
+	Object dispatch(Request req, Response res, MethodHolder holder, RequestMethod method, String path) throws Throwable {
+		if(holder != null) {
+			if(holder.cache != null) {
+				return dispatchCached(req, res, holder);
+			}
+			//execute
+			return holder.invoker.invoke(req, res);
 		}
 
-		String[] routeSplit = routeValue.toLowerCase().split("/");
-
-		if(split.length != routeSplit.length) {
-			return false;
+		if(method == RequestMethod.GET) {
+			for(StaticMount mount : staticMounts) {
+				if(mount.handle(path, req, res)) {
+					return null;
+				}
+			}
 		}
 
-		boolean matches = true;
-		for(int i = 0; i < split.length; i++) {
-			String annString = routeSplit[i];
-			String urlString = split[i];
+		if(sendMethodNotAllowed(res, path)) {
+			return null;
+		}
 
-			//System.out.println(annString + " --- " + urlString);
+		//handle 404
+		route404.send404(req, res.setStatusCode(StatusCode.NOT_FOUND));
+		return null;
+	}
 
-			//Fix an issue with race condition with root
-			if(!annString.contains("{") && !annString.contains("}") && !annString.equals(urlString)) {
-				return false;
+	/**
+	 * Answer a request that no route matched, when only the default 404 page could answer it
+	 */
+	private void sendMiss(Exchange exchange, String path) {
+		metrics.requestStarted();
+		long start = System.nanoTime();
+		boolean recycle = recycleRequests;
+		Response res = recycle ? requestPool.response(exchange, jsonAdapters) : new Response(this, exchange, jsonAdapters);
+		try {
+			if(!sendMethodNotAllowed(res, path)) {
+				//The default 404 page never looks at the request
+				route404.send404(null, res.setStatusCode(StatusCode.NOT_FOUND));
 			}
+		}
+		finally {
+			finish(null, res, start);
+		}
+		if(recycle) {
+			requestPool.release(null, res);
+		}
+	}
 
+	/**
+	 * Send a 405 Method Not Allowed if the path has a route under another method
+	 * @return true if it was sent
+	 */
+	private boolean sendMethodNotAllowed(Response res, String path) {
+		if(!methodNotAllowed) {
+			return false;
+		}
+		Set<RequestMethod> allowed = routeIndex.allowedMethods(path);
+		if(allowed.isEmpty()) {
+			return false;
+		}
 
-			if(annString.length() != 0 && annString.charAt(0) != '{' && annString.charAt(annString.length() - 1) != '}') {
-				//is not a wildcard, it must match
-				//System.out.println(annString + " - " + urlString);
-				if(annString.length() != 0 && !annString.equals(urlString)) {
-					matches = false;
-				}
+		StringBuilder allow = new StringBuilder();
+		for(RequestMethod method : allowed) {
+			if(allow.length() != 0) {
+				allow.append(", ");
 			}
-			else if(
-					(annString.length() != 0 && annString.charAt(0) != '{' && annString.charAt(annString.length() - 1) == '}') || 
-					(annString.length() != 0 && annString.charAt(0) == '{' && annString.charAt(annString.length() - 1) != '}')
+			allow.append(method.name());
+		}
+		res.getHeaders().set("Allow", allow.toString());
+		res.setStatusCode(StatusCode.METHOD_NOT_ALLOWED).sendText("405. Method not allowed.");
+		return true;
+	}
 
-					) {
+	/**
+	 * Send the cached response if there is one. Otherwise run the route and record its response,
+	 * unless another request is already running it, in which case wait for that response without holding this thread.
+	 */
+	private Object dispatchCached(Request req, Response res, MethodHolder holder) throws Throwable {
+		String key = holder.cache.key(req, holder.template);
+		CachedResponse hit = responseCache.get(key);
+		if(hit != null) {
+			res.sendCached(hit);
+			return null;
+		}
 
-				//Must have closing {}
-				return false;
-			}
+		CompletableFuture<CachedResponse> loader = new CompletableFuture<CachedResponse>();
+		CompletableFuture<CachedResponse> loading = responseCache.claim(key, loader);
+		if(loading == null) {
+			res.record(responseCache, key, holder.cache.ttlMillis, loader);
+			return holder.invoker.invoke(req, res);
 		}
 
-		return matches;
+		//The leader completes the loader before sending its own response, so send ours from the executor instead of holding up the leader's thread
+		return loading.thenComposeAsync(entry -> {
+			if(entry != null) {
+				res.sendCached(entry);
+				return CompletableFuture.completedFuture(null);
+			}
 
+			//The response could not be cached, for example because it was an error. Run the route for this request too.
+			try {
+				Object value = holder.invoker.invoke(req, res);
+				if(value instanceof CompletionStage) {
+					return ((CompletionStage<?>) value).thenApply(v -> (Object) v);
+				}
+				return CompletableFuture.completedFuture(null);
+			}
+			catch(Throwable t) {
+				CompletableFuture<Object> failed = new CompletableFuture<Object>();
+				failed.completeExceptionally(t);
+				return failed;
+			}
+		}, executor);
 	}
 
-	private void invokeMethod(HttpExchange exchange, MethodHolder holder) {
-		try {
-			Object instanceObject = holder.instanceObject;
-
-			//if we don't have an existing intance object, we create a new one with a 0 arg constructor
-			if(instanceObject == null) {
-				instanceObject = holder.clazz.newInstance();
-			}
+	/**
+	 * Answer with 429 Too Many Requests if the client is over the limit
+	 * @return true if the request was refused
+	 */
+	private boolean isRateLimited(RateLimiter limiter, Exchange exchange, RouteMetrics routeMetrics) {
+		long wait = limiter.tryAcquire(exchange);
+		if(wait == 0) {
+			return false;
+		}
 
-			holder.method.invoke(instanceObject, new Request(this, exchange, holder.route.value().split("/")), new Response(this, exchange));
+		Response res = new Response(this, exchange).setStatusCode(StatusCode.TOO_MANY_REQUESTS);
+		res.getHeaders().set("Retry-After", String.valueOf(Math.max(1, (wait + 999999999) / 1000000000)));
+		res.sendText("429. Too many requests.");
+		metrics.recordRejected(routeMetrics, res.getSentStatus(), res.getBytesWritten());
+		return true;
+	}
 
-		} catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException | InstantiationException e) {
-			e.printStackTrace();
+	private boolean isBodyTooLarge(Exchange exchange) {
+		List<String> contentLength = exchange.getRequestHeaders().get("Content-Length");
+		if(contentLength == null || contentLength.isEmpty()) {
+			return false;
+		}
+		try {
+			return Long.parseLong(contentLength.get(0).trim()) > maxBodySize;
+		}
+		catch(NumberFormatException e) {
+			return false;
 		}
 	}
 
@@ -0,0 +1,141 @@
+package org.golde.router;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factory methods for the executors a {@link Router} can run its routes on.
+ * Pass the result to {@link Router#setExecutor(Executor)} before calling {@link Router#start()}.
+ * @author Eric Golde
+ *
+ */
+public final class RouterExecutors {
+
+	/**
+	 * Set while a request is being run on the thread that tried to hand it to the executor, because the executor rejected it.
+	 */
+	private static final ThreadLocal<Boolean> SHEDDING = new ThreadLocal<Boolean>();
+
+	private RouterExecutors() {}
+
+	/**
+	 * A fixed number of threads with an unbounded queue. This is what the router used before, with 20 threads.
+	 * @param threads the number of threads
+	 * @return the executor
+	 */
+	public static ExecutorService fixed(int threads) {
+		return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), namedThreads("router-worker"));
+	}
+
+	/**
+	 * A fixed number of threads, and a limit on how many requests can wait for a thread.
+	 * Requests that arrive once the queue is full are answered with 503 Service Unavailable, without running any route.
+	 * @param threads the number of threads
+	 * @param queueLimit how many requests can wait for a free thread. 0 means requests are only accepted while a thread is free.
+	 * @return the executor
+	 */
+	public static ExecutorService bounded(int threads, int queueLimit) {
+		BlockingQueue<Runnable> queue = queueLimit == 0 ? new SynchronousQueue<Runnable>() : new ArrayBlockingQueue<Runnable>(queueLimit);
+		return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, queue, namedThreads("router-worker"), new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	/**
+	 * Run every request on its own virtual thread. Great for routes that spend most of their time waiting on a database or another server.
+	 * Virtual threads need Java 21. On older versions this falls back to a cached thread pool, which also grows with the number of requests.
+	 * @return the executor
+	 */
+	public static ExecutorService virtualThreads() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		}
+		catch(ReflectiveOperationException e) {
+			System.err.println("Virtual threads are not supported on Java " + System.getProperty("java.version") + ", falling back to a cached thread pool.");
+			return Executors.newCachedThreadPool(namedThreads("router-worker"));
+		}
+	}
+
+	/**
+	 * Wraps an executor so a rejected request is run on the calling thread, with {@link #isShedding()} set so the router can answer it with a 503.
+	 * @param executor the executor to wrap
+	 * @return the wrapped executor
+	 */
+	static Executor shedding(final Executor executor) {
+		return new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				try {
+					executor.execute(command);
+				}
+				catch(RejectedExecutionException e) {
+					SHEDDING.set(Boolean.TRUE);
+					try {
+						command.run();
+					}
+					finally {
+						SHEDDING.remove();
+					}
+				}
+			}
+		};
+	}
+
+	/**
+	 * @return true if the current request was rejected by the executor, and should not run any routes
+	 */
+	static boolean isShedding() {
+		return SHEDDING.get() != null;
+	}
+
+	/**
+	 * One daemon thread that every router shares for timeouts and heartbeats. It only ever fires timers, the work they trigger is tiny.
+	 * @return the shared scheduler
+	 */
+	public static ScheduledExecutorService timer() {
+		return Timer.INSTANCE;
+	}
+
+	private static ThreadFactory namedThreads(final String prefix) {
+		return namedThreads(prefix, false);
+	}
+
+	private static ThreadFactory namedThreads(final String prefix, final boolean daemon) {
+		final AtomicInteger count = new AtomicInteger();
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, prefix + "-" + count.incrementAndGet());
+				thread.setDaemon(daemon);
+				return thread;
+			}
+		};
+	}
+
+	/**
+	 * Only created once something needs a timeout
+	 */
+	private static class Timer {
+		static final ScheduledExecutorService INSTANCE;
+
+		static {
+			ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, namedThreads("router-timer", true));
+			//Most timeouts are cancelled because the request finished in time, don't keep them around until they would have fired
+			timer.setRemoveOnCancelPolicy(true);
+			INSTANCE = timer;
+		}
+	}
+
+}
@@ -0,0 +1,19 @@
+package org.golde.router.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Binds a @Route method parameter to the request body.
+ * String gets the body as text, byte[] the raw bytes, InputStream the body stream, and Parameters a url encoded form.
+ * Anything else is read as JSON with the route's Gson. An empty body or bad JSON sends a 400 Bad Request.
+ * @author Eric Golde
+ *
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface Body {
+
+}
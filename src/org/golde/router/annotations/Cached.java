@@ -0,0 +1,35 @@
+package org.golde.router.annotations;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Cache the response of a GET route, set with @Route(value = "products", cache = @Cached(value = 60, query = {"page"})).
+ * Only 200 responses sent with send(), sendText(), sendHTML() or sendJSON() are cached, and never one that sets a cookie.
+ * While one request runs the route, other requests for the same response wait for it instead of running the route too.
+ * Requests are told apart by their path, and only the query parameters and headers listed here. Anything else the route reads is ignored,
+ * so a route that answers differently per user must list the header that tells users apart, such as Authorization.
+ * @author Eric Golde
+ *
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({})
+public @interface Cached {
+
+	/**
+	 * Seconds a response is kept for. 0 means the route is not cached.
+	 */
+	long value() default 0;
+
+	/**
+	 * Query parameters that change the response. "*" uses the whole query string as it was sent.
+	 */
+	String[] query() default {};
+
+	/**
+	 * Request headers that change the response, for example "Accept-Language"
+	 */
+	String[] headers() default {};
+
+}
@@ -0,0 +1,23 @@
+package org.golde.router.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Binds a @Route method parameter to a wildcard from the url. For @Route("users/{id}"), use @Path("id") long id.
+ * Works with String, int, long, double, float, boolean, their boxed versions, and enums. A value that doesn't convert sends a 400 Bad Request.
+ * @author Eric Golde
+ *
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface Path {
+
+	/**
+	 * The name of the wildcard, without the {}
+	 */
+	String value();
+
+}
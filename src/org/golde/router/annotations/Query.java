@@ -0,0 +1,34 @@
+package org.golde.router.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Binds a @Route method parameter to a query parameter, for example @Query("limit") int limit.
+ * Works with the same types as {@link Path}. A value that doesn't convert, or a required one that is missing, sends a 400 Bad Request.
+ * A boolean sent as a flag with no value (?debug) is true.
+ * @author Eric Golde
+ *
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface Query {
+
+	/**
+	 * The name of the query parameter
+	 */
+	String value();
+
+	/**
+	 * Send a 400 Bad Request if the parameter is missing. When false, missing numbers are 0, missing booleans are false, and everything else is null.
+	 */
+	boolean required() default true;
+
+	/**
+	 * Used when the parameter is missing. Setting this makes the parameter optional.
+	 */
+	String defaultValue() default "";
+
+}
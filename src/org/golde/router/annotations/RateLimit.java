@@ -0,0 +1,33 @@
+package org.golde.router.annotations;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * A rate limit for a single route, set with @Route(value = "search", rateLimit = @RateLimit(value = 5, burst = 20)).
+ * Each client gets its own limit. Requests over it are answered with 429 Too Many Requests and a Retry-After header, without running the route.
+ * Applies on top of the router's own limit, see Router.setRateLimiter().
+ * @author Eric Golde
+ *
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({})
+public @interface RateLimit {
+
+	/**
+	 * Requests per second each client can make. 0 means the route has no limit of its own.
+	 */
+	double value() default 0;
+
+	/**
+	 * How many requests a client can make at once, after being idle. 0 allows one second worth of requests.
+	 */
+	int burst() default 0;
+
+	/**
+	 * Tell clients apart by this request header, for example "X-Api-Key". Empty, or a request without the header, uses the client's IP address.
+	 */
+	String header() default "";
+
+}
@@ -13,5 +13,26 @@ public @interface Route {
 
 	String value();
 	RequestMethod method() default RequestMethod.GET;
-	
+
+	/**
+	 * Name of the Gson this route uses for JSON, added with Router.addGson(). "compact" and "pretty" always exist. Empty uses the router's Gson.
+	 */
+	String gson() default "";
+
+	/**
+	 * Milliseconds a route that returns a CompletableFuture has to finish before it is answered with 408 Request Timeout.
+	 * 0 uses Router.getAsyncTimeout(), -1 waits forever. Routes that don't return a future can't be timed out.
+	 */
+	long timeout() default 0;
+
+	/**
+	 * Limit how often each client can call this route. No limit by default.
+	 */
+	RateLimit rateLimit() default @RateLimit;
+
+	/**
+	 * Cache the response of this route. Only works for GET routes. Not cached by default.
+	 */
+	Cached cache() default @Cached;
+
 }
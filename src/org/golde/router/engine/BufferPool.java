@@ -0,0 +1,52 @@
+package org.golde.router.engine;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of direct ByteBuffers, all the same size.
+ * Direct buffers are expensive to allocate and free, so connections borrow one while they have unread data and give it back when they are done.
+ * @author Eric Golde
+ *
+ */
+class BufferPool {
+
+	private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+	private final AtomicInteger pooled = new AtomicInteger();
+
+	private final int bufferSize;
+	private final int maxPooled;
+
+	BufferPool(int bufferSize, int maxPooled) {
+		this.bufferSize = bufferSize;
+		this.maxPooled = maxPooled;
+	}
+
+	/**
+	 * @return a cleared buffer, from the pool if one is free
+	 */
+	ByteBuffer acquire() {
+		ByteBuffer buffer = buffers.poll();
+		if(buffer == null) {
+			return ByteBuffer.allocateDirect(bufferSize);
+		}
+		pooled.decrementAndGet();
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Give a buffer back to the pool. The buffer must not be used after this.
+	 * @param buffer the buffer
+	 */
+	void release(ByteBuffer buffer) {
+		if(pooled.incrementAndGet() > maxPooled) {
+			pooled.decrementAndGet();
+			return;
+		}
+		buffers.offer(buffer);
+	}
+
+}
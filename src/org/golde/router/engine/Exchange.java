@@ -0,0 +1,109 @@
+package org.golde.router.engine;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A single HTTP request and its response, as seen by the router.
+ * Each {@link HttpEngine} provides its own implementation, so {@link org.golde.router.objects.Request} and {@link org.golde.router.objects.Response} never depend on a specific server.
+ * Follows the same rules as com.sun.net.httpserver.HttpExchange.
+ * @author Eric Golde
+ *
+ */
+public interface Exchange {
+
+	/**
+	 * @return the request method sent by the client, for example "GET"
+	 */
+	public abstract String getRequestMethod();
+
+	/**
+	 * @return the raw request target, including the query string, for example "/users/5?full=true"
+	 */
+	public abstract String getRequestURI();
+
+	/**
+	 * @return the request headers. Keys are case insensitive.
+	 */
+	public abstract Map<String, List<String>> getRequestHeaders();
+
+	/**
+	 * @return the request body. Empty if the request had no body.
+	 */
+	public abstract InputStream getRequestBody();
+
+	/**
+	 * @return the response headers. Changing these after {@link #sendResponseHeaders(int, long)} does nothing.
+	 */
+	public abstract Map<String, List<String>> getResponseHeaders();
+
+	/**
+	 * Send the status line and response headers.
+	 * @param code the status code
+	 * @param length the length of the body. -1 for no body, 0 for a chunked body of unknown length.
+	 * @throws IOException if the headers were already sent, or the connection is gone
+	 */
+	public abstract void sendResponseHeaders(int code, long length) throws IOException;
+
+	/**
+	 * @return the response body. Must be closed to finish the exchange.
+	 */
+	public abstract OutputStream getResponseBody();
+
+	/**
+	 * Write part of a file to the response body, after {@link #sendResponseHeaders(int, long)}.
+	 * Engines that can send straight from the file to the socket override this, so the file never has to be copied onto the heap.
+	 * By default the file is copied through the response body stream.
+	 * @param file the file to read from. Not closed.
+	 * @param position where in the file to start
+	 * @param count how many bytes to send
+	 * @throws IOException if the file could not be read, or the connection is gone
+	 */
+	public default void sendFile(FileChannel file, long position, long count) throws IOException {
+		WritableByteChannel out = Channels.newChannel(getResponseBody());
+		while(count > 0) {
+			long sent = file.transferTo(position, count, out);
+			if(sent <= 0) {
+				throw new EOFException("File ended before " + count + " more bytes could be sent");
+			}
+			position += sent;
+			count -= sent;
+		}
+	}
+
+	/**
+	 * @return the address of the client
+	 */
+	public abstract InetSocketAddress getRemoteAddress();
+
+	/**
+	 * Is the client still connected. Engines that can't tell until a write fails always return true.
+	 * @return false once the client is known to be gone
+	 */
+	public default boolean isOpen() {
+		return true;
+	}
+
+	/**
+	 * Is the client behind on reading the response. Writing more while it is makes the writing thread wait until the client catches up.
+	 * Engines that don't queue writes always return false.
+	 * @return true if the client has a lot of unread response bytes waiting
+	 */
+	public default boolean isBacklogged() {
+		return false;
+	}
+
+	/**
+	 * Finish the exchange. Closes the response body if it is still open.
+	 */
+	public abstract void close();
+
+}
@@ -0,0 +1,19 @@
+package org.golde.router.engine;
+
+import java.io.IOException;
+
+/**
+ * Handles every exchange an {@link HttpEngine} receives. The router implements this to run routes.
+ * @author Eric Golde
+ *
+ */
+public interface ExchangeHandler {
+
+	/**
+	 * Handle an exchange. Called on a thread of the executor given to {@link HttpEngine#start(ExchangeHandler, java.util.concurrent.Executor)}.
+	 * @param exchange the exchange
+	 * @throws IOException if sending the response failed
+	 */
+	public abstract void handle(Exchange exchange) throws IOException;
+
+}
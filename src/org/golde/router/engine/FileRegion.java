@@ -0,0 +1,41 @@
+package org.golde.router.engine;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Part of a file waiting to be sent with FileChannel.transferTo, so the bytes go from the page cache to the socket without touching the heap.
+ * @author Eric Golde
+ *
+ */
+class FileRegion {
+
+	private final FileChannel file;
+	private long position;
+	long remaining;
+
+	FileRegion(FileChannel file, long position, long count) {
+		this.file = file;
+		this.position = position;
+		this.remaining = count;
+	}
+
+	/**
+	 * Send as much as the socket will take right now
+	 * @param channel the socket
+	 * @return how many bytes were sent
+	 * @throws IOException if the file could not be read, or the socket is gone
+	 */
+	long writeTo(WritableByteChannel channel) throws IOException {
+		long sent = file.transferTo(position, remaining, channel);
+		if(sent == 0 && position >= file.size()) {
+			throw new EOFException("File ended before " + remaining + " more bytes could be sent");
+		}
+		position += sent;
+		remaining -= sent;
+		return sent;
+	}
+
+}
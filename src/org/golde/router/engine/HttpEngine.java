@@ -0,0 +1,34 @@
+package org.golde.router.engine;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executor;
+
+/**
+ * The HTTP server underneath a {@link org.golde.router.Router}.
+ * Pick one when creating the router: {@link SunHttpEngine} (the default) or {@link NioHttpEngine}. Routes work the same on both.
+ * @author Eric Golde
+ *
+ */
+public interface HttpEngine {
+
+	/**
+	 * Start accepting connections
+	 * @param handler the handler that is called for every exchange
+	 * @param executor the executor the handler is run on
+	 * @throws IOException if the server could not be started
+	 */
+	public abstract void start(ExchangeHandler handler, Executor executor) throws IOException;
+
+	/**
+	 * Stop accepting connections, and wait for exchanges that are still running
+	 * @param delaySeconds the most amount of time to wait for running exchanges, in seconds
+	 */
+	public abstract void stop(int delaySeconds);
+
+	/**
+	 * @return the address the server is bound to
+	 */
+	public abstract InetSocketAddress getAddress();
+
+}
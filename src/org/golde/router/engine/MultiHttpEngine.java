@@ -0,0 +1,97 @@
+package org.golde.router.engine;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Several engines serving one router, for listening on more than one address or port.
+ * Every engine shares the router's routes, middleware and executor. For example, new Router(new MultiHttpEngine(new NioHttpEngine(80), new NioHttpEngine(8080))).
+ * @author Eric Golde
+ *
+ */
+public class MultiHttpEngine implements HttpEngine {
+
+	private final List<HttpEngine> engines;
+
+	/**
+	 * @param engines the engines, at least one
+	 */
+	public MultiHttpEngine(HttpEngine... engines) {
+		if(engines.length == 0) {
+			throw new IllegalArgumentException("At least one engine is needed");
+		}
+		this.engines = Collections.unmodifiableList(new ArrayList<HttpEngine>(Arrays.asList(engines)));
+	}
+
+	/**
+	 * Start every engine. If one fails to start, the ones that already started are stopped again.
+	 */
+	@Override
+	public void start(ExchangeHandler handler, Executor executor) throws IOException {
+		for(int i = 0; i < engines.size(); i++) {
+			try {
+				engines.get(i).start(handler, executor);
+			}
+			catch(IOException | RuntimeException e) {
+				for(int j = 0; j < i; j++) {
+					engines.get(j).stop(0);
+				}
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Stop every engine at the same time, so the slowest one to drain sets how long this takes
+	 */
+	@Override
+	public void stop(final int delaySeconds) {
+		List<Thread> stopping = new ArrayList<Thread>();
+		for(final HttpEngine engine : engines) {
+			Thread thread = new Thread(() -> engine.stop(delaySeconds), "router-engine-stop");
+			thread.start();
+			stopping.add(thread);
+		}
+		for(Thread thread : stopping) {
+			try {
+				thread.join();
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return the address of the first engine. See {@link #getAddresses()} for all of them.
+	 */
+	@Override
+	public InetSocketAddress getAddress() {
+		return engines.get(0).getAddress();
+	}
+
+	/**
+	 * @return the address of every engine, in the order they were given
+	 */
+	public List<InetSocketAddress> getAddresses() {
+		List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>(engines.size());
+		for(HttpEngine engine : engines) {
+			addresses.add(engine.getAddress());
+		}
+		return addresses;
+	}
+
+	/**
+	 * @return the engines
+	 */
+	public List<HttpEngine> getEngines() {
+		return engines;
+	}
+
+}
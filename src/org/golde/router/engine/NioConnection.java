@@ -0,0 +1,573 @@
+package org.golde.router.engine;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A single keep-alive connection of the {@link NioHttpEngine}.
+ * Reading and parsing only happens on the selector thread. Writing can happen from any thread, and is guarded by the connection itself, as are changes to the key's interest set.
+ * @author Eric Golde
+ *
+ */
+class NioConnection {
+
+	private static final int READING_HEAD = 0;
+	private static final int READING_BODY = 1;
+	private static final int DISPATCHED = 2;
+
+	/**
+	 * The most a body buffer starts out as. It grows as the body arrives, so a client can't claim a large Content-Length and make us hold that much memory without sending it.
+	 */
+	private static final int INITIAL_BODY_SIZE = 64 * 1024;
+
+	private final NioHttpEngine engine;
+
+	/**
+	 * The selector thread that owns this connection
+	 */
+	private final NioSelectorLoop loop;
+	private final SocketChannel channel;
+	SelectionKey key;
+
+	/**
+	 * Borrowed from the pool while there is unparsed data. Always in write mode.
+	 */
+	private ByteBuffer readBuffer;
+	private int scanFrom = 0;
+	private int state = READING_HEAD;
+	private long lastActive = System.currentTimeMillis();
+
+	//The request currently being read
+	private String method;
+	private String target;
+	private boolean http11;
+	private Map<String, List<String>> headers;
+	private byte[] body;
+	private int bodyLength;
+	private int bodyRead;
+
+	//Guarded by this
+	/**
+	 * ByteBuffers and FileRegions that still need to be written, in order
+	 */
+	private final ArrayDeque<Object> writeQueue = new ArrayDeque<Object>();
+	private long pendingBytes = 0;
+	private boolean closeAfterWrite = false;
+	private volatile boolean closed = false;
+
+	NioConnection(NioHttpEngine engine, NioSelectorLoop loop, SocketChannel channel) {
+		this.engine = engine;
+		this.loop = loop;
+		this.channel = channel;
+	}
+
+	InetSocketAddress getRemoteAddress() {
+		try {
+			return (InetSocketAddress) channel.getRemoteAddress();
+		}
+		catch(IOException e) {
+			return null;
+		}
+	}
+
+	boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * @return true if more is queued than the engine lets a writer get ahead of the client
+	 */
+	synchronized boolean isBacklogged() {
+		return pendingBytes > engine.getMaxPendingWrite();
+	}
+
+	/* ----------------------------------------------------------------------------------------
+	 * Reading, selector thread only
+	 * ---------------------------------------------------------------------------------------- */
+
+	void onReadable() {
+		if(readBuffer == null) {
+			readBuffer = engine.bufferPool.acquire();
+		}
+
+		int read;
+		try {
+			read = channel.read(readBuffer);
+		}
+		catch(IOException e) {
+			close();
+			return;
+		}
+
+		if(read == -1) {
+			close();
+			return;
+		}
+
+		lastActive = System.currentTimeMillis();
+		process();
+	}
+
+	/**
+	 * Parse as many requests out of the read buffer as we can, stopping once one is handed to the executor
+	 */
+	private void process() {
+		while(!closed && state != DISPATCHED && readBuffer != null && readBuffer.position() > 0) {
+			if(state == READING_HEAD) {
+				//Clients may send empty lines between requests
+				int blank = 0;
+				while(blank < readBuffer.position() && (readBuffer.get(blank) == '\r' || readBuffer.get(blank) == '\n')) {
+					blank++;
+				}
+				if(blank > 0) {
+					consume(blank);
+					scanFrom = 0;
+					continue;
+				}
+
+				int headEnd = findHeadEnd();
+				if(headEnd == -1) {
+					if(!readBuffer.hasRemaining()) {
+						sendErrorAndClose(431, "Request Header Fields Too Large");
+					}
+					break;
+				}
+				if(!parseHead(headEnd)) {
+					return;
+				}
+				consume(headEnd);
+			}
+
+			if(state == READING_BODY) {
+				int take = Math.min(readBuffer.position(), bodyLength - bodyRead);
+				if(bodyRead + take > body.length) {
+					body = Arrays.copyOf(body, (int) Math.min(bodyLength, Math.max(bodyRead + take, body.length * 2L)));
+				}
+				readBuffer.flip();
+				readBuffer.get(body, bodyRead, take);
+				readBuffer.compact();
+				bodyRead += take;
+
+				if(bodyRead < bodyLength) {
+					break;
+				}
+				dispatch();
+			}
+		}
+
+		if(closed) {
+			return;
+		}
+
+		if(readBuffer != null && readBuffer.position() == 0) {
+			engine.bufferPool.release(readBuffer);
+			readBuffer = null;
+		}
+
+		//Stop reading while a request is being handled, so pipelined requests wait in the buffer
+		setInterest(SelectionKey.OP_READ, state != DISPATCHED);
+	}
+
+	/**
+	 * @return the index just after the \r\n\r\n that ends the request head, or -1 if we don't have it yet
+	 */
+	private int findHeadEnd() {
+		int end = readBuffer.position();
+		for(int i = Math.max(scanFrom, 3); i < end; i++) {
+			if(readBuffer.get(i) == '\n' && readBuffer.get(i - 1) == '\r' && readBuffer.get(i - 2) == '\n' && readBuffer.get(i - 3) == '\r') {
+				scanFrom = 0;
+				return i + 1;
+			}
+		}
+		scanFrom = end;
+		return -1;
+	}
+
+	private void consume(int count) {
+		readBuffer.flip();
+		readBuffer.position(count);
+		readBuffer.compact();
+	}
+
+	private boolean parseHead(int headEnd) {
+		byte[] raw = new byte[headEnd];
+		for(int i = 0; i < headEnd; i++) {
+			raw[i] = readBuffer.get(i);
+		}
+		String head = new String(raw, StandardCharsets.ISO_8859_1);
+
+		int lineEnd = head.indexOf("\r\n");
+		String requestLine = head.substring(0, lineEnd);
+
+		int firstSpace = requestLine.indexOf(' ');
+		int lastSpace = requestLine.lastIndexOf(' ');
+		if(firstSpace <= 0 || lastSpace == firstSpace) {
+			sendErrorAndClose(400, "Bad Request");
+			return false;
+		}
+
+		method = requestLine.substring(0, firstSpace);
+		target = requestLine.substring(firstSpace + 1, lastSpace);
+		String version = requestLine.substring(lastSpace + 1);
+		if(!version.startsWith("HTTP/1.")) {
+			sendErrorAndClose(505, "HTTP Version Not Supported");
+			return false;
+		}
+		http11 = !version.equals("HTTP/1.0");
+
+		headers = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+		int start = lineEnd + 2;
+		while(start < head.length() - 2) {
+			int end = head.indexOf("\r\n", start);
+			int colon = head.indexOf(':', start);
+			if(colon == -1 || colon > end) {
+				sendErrorAndClose(400, "Bad Request");
+				return false;
+			}
+			String name = head.substring(start, colon).trim();
+			String value = head.substring(colon + 1, end).trim();
+			List<String> values = headers.get(name);
+			if(values == null) {
+				values = new ArrayList<String>(1);
+				headers.put(name, values);
+			}
+			values.add(value);
+			start = end + 2;
+		}
+
+		if(headers.containsKey("Transfer-Encoding")) {
+			sendErrorAndClose(501, "Not Implemented");
+			return false;
+		}
+
+		long length = 0;
+		List<String> contentLength = headers.get("Content-Length");
+		if(contentLength != null) {
+			try {
+				length = Long.parseLong(contentLength.get(0));
+			}
+			catch(NumberFormatException e) {
+				length = -1;
+			}
+			if(length < 0) {
+				sendErrorAndClose(400, "Bad Request");
+				return false;
+			}
+		}
+
+		if(length > engine.getMaxBodySize() || length > Integer.MAX_VALUE) {
+			sendErrorAndClose(413, "Payload Too Large");
+			return false;
+		}
+
+		bodyLength = (int) length;
+		body = new byte[Math.min(bodyLength, INITIAL_BODY_SIZE)];
+		bodyRead = 0;
+		state = READING_BODY;
+
+		if(length > 0 && "100-continue".equalsIgnoreCase(first(headers, "Expect"))) {
+			write(ByteBuffer.wrap("HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1)));
+		}
+		return true;
+	}
+
+	private void dispatch() {
+		boolean keepAlive;
+		String connection = first(headers, "Connection");
+		if(http11) {
+			keepAlive = !"close".equalsIgnoreCase(connection);
+		}
+		else {
+			keepAlive = "keep-alive".equalsIgnoreCase(connection);
+		}
+
+		final NioExchange exchange = new NioExchange(this, method, target, headers, body, keepAlive, !http11);
+		state = DISPATCHED;
+		method = null;
+		target = null;
+		headers = null;
+		body = null;
+
+		engine.activeExchanges.incrementAndGet();
+		engine.executor.execute(() -> {
+			try {
+				engine.handler.handle(exchange);
+			}
+			catch(Throwable t) {
+				System.err.println("An error occurred while processing the given request:");
+				t.printStackTrace();
+				exchange.close();
+			}
+		});
+	}
+
+	/**
+	 * Called by the exchange once its response is completely written, from any thread
+	 * @param keepAlive if the connection can be used for another request
+	 */
+	void exchangeDone(final boolean keepAlive) {
+		engine.activeExchanges.decrementAndGet();
+		loop.runOnSelector(() -> {
+			if(closed) {
+				return;
+			}
+			if(!keepAlive) {
+				closeAfterWrite();
+				return;
+			}
+			state = READING_HEAD;
+			lastActive = System.currentTimeMillis();
+			//Handle any pipelined requests we already have
+			process();
+		});
+	}
+
+	/**
+	 * Close the connection if the client went quiet while we wait for it, either between requests or in the middle of sending one
+	 */
+	void closeIfIdle(long now, long timeout) {
+		if(state != DISPATCHED && now - lastActive > timeout) {
+			synchronized(this) {
+				if(pendingBytes > 0) {
+					return;
+				}
+			}
+			close();
+		}
+	}
+
+	private void sendErrorAndClose(int code, String reason) {
+		String response = "HTTP/1.1 " + code + " " + reason + "\r\nContent-Length: 0\r\nConnection: close\r\n\r\n";
+		write(ByteBuffer.wrap(response.getBytes(StandardCharsets.ISO_8859_1)));
+		closeAfterWrite();
+	}
+
+	private static String first(Map<String, List<String>> headers, String name) {
+		List<String> values = headers.get(name);
+		return values == null || values.isEmpty() ? null : values.get(0);
+	}
+
+	/* ----------------------------------------------------------------------------------------
+	 * Writing, any thread
+	 * ---------------------------------------------------------------------------------------- */
+
+	/**
+	 * Write buffers to the client. Whatever can not be written right away is copied and queued, so the caller can reuse the buffers once this returns.
+	 * If too much is queued, waits for the client to read some of it, unless called from the selector thread.
+	 * @param buffers the buffers to write
+	 * @throws IOException if the connection is closed
+	 */
+	synchronized void write(ByteBuffer... buffers) throws IOException {
+		if(closed) {
+			throw new IOException("Connection closed");
+		}
+
+		if(writeQueue.isEmpty()) {
+			try {
+				channel.write(buffers);
+			}
+			catch(IOException e) {
+				close();
+				throw e;
+			}
+		}
+
+		boolean queued = false;
+		for(ByteBuffer buffer : buffers) {
+			if(buffer.hasRemaining()) {
+				ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+				copy.put(buffer).flip();
+				writeQueue.add(copy);
+				pendingBytes += copy.remaining();
+				queued = true;
+			}
+		}
+
+		if(queued) {
+			setInterest(SelectionKey.OP_WRITE, true);
+			loop.wakeup();
+
+			if(!loop.isSelectorThread()) {
+				while(pendingBytes > engine.getMaxPendingWrite() && !closed) {
+					waitForWrite();
+				}
+				if(closed) {
+					throw new IOException("Connection closed");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Send part of a file straight to the socket. Waits until all of it is sent, so the caller can close the file once this returns.
+	 * Must not be called from the selector thread.
+	 * @param file the file
+	 * @param position where in the file to start
+	 * @param count how many bytes to send
+	 * @throws IOException if the file could not be read, or the connection is closed
+	 */
+	synchronized void transfer(FileChannel file, long position, long count) throws IOException {
+		if(closed) {
+			throw new IOException("Connection closed");
+		}
+
+		FileRegion region = new FileRegion(file, position, count);
+		if(writeQueue.isEmpty()) {
+			try {
+				region.writeTo(channel);
+			}
+			catch(IOException e) {
+				close();
+				throw e;
+			}
+		}
+
+		if(region.remaining > 0) {
+			writeQueue.add(region);
+			pendingBytes += region.remaining;
+			setInterest(SelectionKey.OP_WRITE, true);
+			loop.wakeup();
+
+			while(region.remaining > 0 && !closed) {
+				waitForWrite();
+			}
+			if(closed) {
+				throw new IOException("Connection closed");
+			}
+		}
+	}
+
+	private void waitForWrite() throws IOException {
+		try {
+			wait();
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the client to read");
+		}
+	}
+
+	/**
+	 * Write without throwing, used for small messages sent from the selector thread
+	 */
+	private void write(ByteBuffer buffer) {
+		try {
+			write(new ByteBuffer[] {buffer});
+		}
+		catch(IOException ignored) {
+
+		}
+	}
+
+	synchronized void onWritable() {
+		try {
+			while(!writeQueue.isEmpty()) {
+				Object next = writeQueue.peek();
+				boolean done;
+				if(next instanceof FileRegion) {
+					FileRegion region = (FileRegion) next;
+					pendingBytes -= region.writeTo(channel);
+					done = region.remaining == 0;
+				}
+				else {
+					ByteBuffer buffer = (ByteBuffer) next;
+					pendingBytes -= channel.write(buffer);
+					done = !buffer.hasRemaining();
+				}
+				if(!done) {
+					break;
+				}
+				writeQueue.poll();
+			}
+		}
+		catch(IOException e) {
+			close();
+			return;
+		}
+
+		notifyAll();
+
+		if(writeQueue.isEmpty()) {
+			if(closeAfterWrite) {
+				close();
+				return;
+			}
+			setInterest(SelectionKey.OP_WRITE, false);
+		}
+	}
+
+	/**
+	 * Turn interest in an operation on or off. Synchronized because the selector thread turns reading off while other threads turn writing on,
+	 * and the read-modify-write of the interest set could otherwise lose one of them.
+	 */
+	private synchronized void setInterest(int op, boolean on) {
+		try {
+			key.interestOps(on ? key.interestOps() | op : key.interestOps() & ~op);
+		}
+		catch(CancelledKeyException e) {
+			close();
+		}
+	}
+
+	/**
+	 * Close the connection once everything queued has been written
+	 */
+	synchronized void closeAfterWrite() {
+		if(writeQueue.isEmpty()) {
+			close();
+		}
+		else {
+			closeAfterWrite = true;
+		}
+	}
+
+	/**
+	 * Close the connection right away, from any thread
+	 */
+	void close() {
+		synchronized(this) {
+			if(closed) {
+				return;
+			}
+			closed = true;
+			writeQueue.clear();
+			pendingBytes = 0;
+			notifyAll();
+		}
+
+		try {
+			channel.close();
+		}
+		catch(IOException ignored) {
+
+		}
+
+		if(loop.isSelectorThread()) {
+			cleanup();
+		}
+		else {
+			loop.runOnSelector(this::cleanup);
+		}
+	}
+
+	private void cleanup() {
+		loop.removed(this);
+		if(readBuffer != null) {
+			engine.bufferPool.release(readBuffer);
+			readBuffer = null;
+		}
+	}
+
+}
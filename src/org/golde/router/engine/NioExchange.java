@@ -0,0 +1,330 @@
+package org.golde.router.engine;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.golde.router.enums.StatusCode;
+
+/**
+ * An {@link Exchange} of the {@link NioHttpEngine}.
+ * The status line and headers are held back until the first body bytes are flushed, so small responses go out in a single write.
+ * @author Eric Golde
+ *
+ */
+class NioExchange implements Exchange {
+
+	private static final byte[] CRLF = {'\r', '\n'};
+	private static final byte[] LAST_CHUNK = {'0', '\r', '\n', '\r', '\n'};
+
+	private final NioConnection connection;
+	private final String method;
+	private final String target;
+	private final Map<String, List<String>> requestHeaders;
+	private final byte[] body;
+	private final boolean keepAlive;
+	private final boolean http10;
+
+	private final Map<String, List<String>> responseHeaders = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+	private final ResponseStream responseBody = new ResponseStream();
+
+	NioExchange(NioConnection connection, String method, String target, Map<String, List<String>> requestHeaders, byte[] body, boolean keepAlive, boolean http10) {
+		this.connection = connection;
+		this.method = method;
+		this.target = target;
+		this.requestHeaders = requestHeaders;
+		this.body = body;
+		this.keepAlive = keepAlive;
+		this.http10 = http10;
+	}
+
+	@Override
+	public String getRequestMethod() {
+		return method;
+	}
+
+	@Override
+	public String getRequestURI() {
+		return target;
+	}
+
+	@Override
+	public Map<String, List<String>> getRequestHeaders() {
+		return requestHeaders;
+	}
+
+	@Override
+	public InputStream getRequestBody() {
+		return new ByteArrayInputStream(body);
+	}
+
+	@Override
+	public Map<String, List<String>> getResponseHeaders() {
+		return responseHeaders;
+	}
+
+	@Override
+	public void sendResponseHeaders(int code, long length) throws IOException {
+		if(responseBody.head != null || responseBody.headSent) {
+			throw new IOException("Headers already sent");
+		}
+
+		boolean noBody = length == -1 || code == 204 || code == 304 || "HEAD".equalsIgnoreCase(method);
+		boolean chunked = !noBody && length == 0 && !http10;
+		//HTTP/1.0 has no chunked encoding, so the end of the body is the end of the connection
+		boolean closeAfter = !keepAlive || (!noBody && length == 0 && http10);
+
+		StringBuilder sb = new StringBuilder(256);
+		sb.append(http10 ? "HTTP/1.0 " : "HTTP/1.1 ").append(code).append(' ').append(reason(code)).append("\r\n");
+		for(Map.Entry<String, List<String>> header : responseHeaders.entrySet()) {
+			for(String value : header.getValue()) {
+				sb.append(header.getKey()).append(": ").append(value).append("\r\n");
+			}
+		}
+
+		if(chunked) {
+			sb.append("Transfer-Encoding: chunked\r\n");
+		}
+		else if(length > 0) {
+			sb.append("Content-Length: ").append(length).append("\r\n");
+		}
+		else if(length == -1 && code != 204 && code != 304) {
+			sb.append("Content-Length: 0\r\n");
+		}
+
+		if(closeAfter) {
+			sb.append("Connection: close\r\n");
+		}
+		else if(http10) {
+			sb.append("Connection: keep-alive\r\n");
+		}
+		sb.append("\r\n");
+
+		responseBody.head = sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+		responseBody.noBody = noBody;
+		responseBody.chunked = chunked;
+		responseBody.remaining = noBody || length == 0 ? -1 : length;
+		responseBody.closeAfter = closeAfter;
+	}
+
+	@Override
+	public OutputStream getResponseBody() {
+		return responseBody;
+	}
+
+	@Override
+	public void sendFile(FileChannel file, long position, long count) throws IOException {
+		responseBody.writeFile(file, position, count);
+	}
+
+	@Override
+	public InetSocketAddress getRemoteAddress() {
+		return connection.getRemoteAddress();
+	}
+
+	@Override
+	public boolean isOpen() {
+		return !connection.isClosed();
+	}
+
+	@Override
+	public boolean isBacklogged() {
+		return connection.isBacklogged();
+	}
+
+	@Override
+	public void close() {
+		if(responseBody.head == null && !responseBody.headSent) {
+			//Nothing was ever sent, there is no way to recover the connection
+			if(!responseBody.finished) {
+				responseBody.finished = true;
+				connection.close();
+				connection.exchangeDone(false);
+			}
+			return;
+		}
+
+		try {
+			responseBody.close();
+		}
+		catch(IOException ignored) {
+
+		}
+	}
+
+	private static String reason(int code) {
+		for(StatusCode statusCode : StatusCode.values()) {
+			if(statusCode.getCode() == code) {
+				return statusCode.getMeaning();
+			}
+		}
+		return "";
+	}
+
+	/**
+	 * Buffers the body, and writes it to the connection whenever the buffer fills up or is flushed.
+	 */
+	private class ResponseStream extends OutputStream {
+
+		private final byte[] buffer = new byte[8192];
+		private int count = 0;
+
+		private byte[] head;
+		private boolean headSent = false;
+		private boolean noBody;
+		private boolean chunked;
+		private boolean closeAfter;
+
+		/**
+		 * How many bytes we still expect for a fixed length body, -1 if the length is not fixed
+		 */
+		private long remaining;
+
+		private boolean finished = false;
+
+		@Override
+		public void write(int b) throws IOException {
+			checkWritable(1);
+			if(count == buffer.length) {
+				flushBuffer(false);
+			}
+			buffer[count++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			checkWritable(len);
+			while(len > 0) {
+				if(count == buffer.length) {
+					flushBuffer(false);
+				}
+				int take = Math.min(len, buffer.length - count);
+				System.arraycopy(b, off, buffer, count, take);
+				count += take;
+				off += take;
+				len -= take;
+			}
+		}
+
+		/**
+		 * Flush what we have buffered, then send the file region straight to the socket
+		 */
+		private void writeFile(FileChannel file, long position, long length) throws IOException {
+			checkWritable(length);
+			flushBuffer(false);
+			if(noBody || length == 0) {
+				return;
+			}
+
+			if(chunked) {
+				connection.write(ByteBuffer.wrap((Long.toHexString(length) + "\r\n").getBytes(StandardCharsets.ISO_8859_1)));
+				connection.transfer(file, position, length);
+				connection.write(ByteBuffer.wrap(CRLF));
+			}
+			else {
+				connection.transfer(file, position, length);
+			}
+		}
+
+		private void checkWritable(long len) throws IOException {
+			if(finished) {
+				throw new IOException("Stream is closed");
+			}
+			if(head == null && !headSent) {
+				throw new IOException("sendResponseHeaders() must be called before writing the body");
+			}
+			if(noBody) {
+				if(len > 0 && !"HEAD".equalsIgnoreCase(method)) {
+					throw new IOException("This response has no body");
+				}
+				return;
+			}
+			if(remaining != -1) {
+				if(len > remaining) {
+					throw new IOException("Too many bytes written, the Content-Length is smaller");
+				}
+				remaining -= len;
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if(finished) {
+				return;
+			}
+			flushBuffer(false);
+		}
+
+		private void flushBuffer(boolean last) throws IOException {
+			if(noBody) {
+				count = 0;
+			}
+
+			if(count == 0 && head == null && !last) {
+				return;
+			}
+
+			ByteBuffer[] parts = new ByteBuffer[5];
+			int n = 0;
+			if(head != null) {
+				parts[n++] = ByteBuffer.wrap(head);
+				head = null;
+				headSent = true;
+			}
+			if(count > 0) {
+				if(chunked) {
+					parts[n++] = ByteBuffer.wrap((Integer.toHexString(count) + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+					parts[n++] = ByteBuffer.wrap(buffer, 0, count);
+					parts[n++] = ByteBuffer.wrap(CRLF);
+				}
+				else {
+					parts[n++] = ByteBuffer.wrap(buffer, 0, count);
+				}
+			}
+			if(last && chunked) {
+				parts[n++] = ByteBuffer.wrap(LAST_CHUNK);
+			}
+			count = 0;
+
+			if(n == 0) {
+				return;
+			}
+
+			ByteBuffer[] toWrite = new ByteBuffer[n];
+			System.arraycopy(parts, 0, toWrite, 0, n);
+			connection.write(toWrite);
+		}
+
+		@Override
+		public void close() throws IOException {
+			if(finished) {
+				return;
+			}
+
+			try {
+				flushBuffer(true);
+			}
+			finally {
+				finished = true;
+				if(remaining > 0) {
+					//The body is shorter than the Content-Length we sent, the client would wait forever
+					connection.close();
+					connection.exchangeDone(false);
+				}
+				else {
+					connection.exchangeDone(keepAlive && !closeAfter && !connection.isClosed());
+				}
+			}
+		}
+
+	}
+
+}
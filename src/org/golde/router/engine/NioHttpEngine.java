@@ -0,0 +1,184 @@
+package org.golde.router.engine;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A non blocking HTTP/1.1 server built on a java.nio Selector.
+ * Selector threads read and parse requests into pooled direct buffers, then hand complete requests to the executor.
+ * There is one selector thread by default, see {@link #setSelectorThreads(int)} to spread connections over more.
+ * Connections are kept alive between requests, and pipelined requests are answered in the order they were sent.
+ * Settings must be changed before the router is started.
+ * @author Eric Golde
+ *
+ */
+public class NioHttpEngine implements HttpEngine {
+
+	private final InetSocketAddress address;
+
+	/**
+	 * Size of the direct buffer each connection reads into. The request line and headers must fit in this.
+	 */
+	@Getter @Setter private int bufferSize = 16 * 1024;
+
+	/**
+	 * How many free read buffers to keep around for new requests
+	 */
+	@Getter @Setter private int maxPooledBuffers = 1024;
+
+	/**
+	 * The biggest request body we accept, in bytes. Larger requests get a 413 and are closed.
+	 */
+	@Getter @Setter private long maxBodySize = 16 * 1024 * 1024;
+
+	/**
+	 * How long an idle keep-alive connection stays open, in milliseconds. Also how long a client can go without sending anything in the middle of a request.
+	 */
+	@Getter @Setter private long keepAliveTimeout = 30_000;
+
+	/**
+	 * How many response bytes can wait to be sent on a single connection before the thread writing the response waits for the client to catch up
+	 */
+	@Getter @Setter private long maxPendingWrite = 256 * 1024;
+
+	/**
+	 * How many selector threads read and parse requests. Connections are dealt out to them in turn.
+	 * One is plenty for most servers. On a machine with many cores that serves lots of small requests, use up to one per core so parsing isn't stuck on a single thread.
+	 */
+	@Getter @Setter private int selectorThreads = 1;
+
+	/**
+	 * How many connections the OS queues while the accepting thread is busy. 0 uses the OS default.
+	 */
+	@Getter @Setter private int backlog = 0;
+
+	ExchangeHandler handler;
+	Executor executor;
+	BufferPool bufferPool;
+
+	private ServerSocketChannel serverChannel;
+	private NioSelectorLoop[] loops;
+	private final AtomicInteger nextLoop = new AtomicInteger();
+	private volatile boolean running;
+
+	/**
+	 * Exchanges that were handed to the executor, and are not finished yet
+	 */
+	final AtomicInteger activeExchanges = new AtomicInteger();
+
+	/**
+	 * Create the engine on a specific port
+	 * @param port port for http server to be on
+	 */
+	public NioHttpEngine(int port) {
+		this(new InetSocketAddress(port));
+	}
+
+	/**
+	 * Create the engine on a specific address
+	 * @param address address for http server to be on
+	 */
+	public NioHttpEngine(InetSocketAddress address) {
+		this.address = address;
+	}
+
+	@Override
+	public void start(ExchangeHandler handler, Executor executor) throws IOException {
+		this.handler = handler;
+		this.executor = executor;
+		this.bufferPool = new BufferPool(bufferSize, maxPooledBuffers);
+
+		int count = Math.max(1, selectorThreads);
+		loops = new NioSelectorLoop[count];
+		for(int i = 0; i < count; i++) {
+			loops[i] = new NioSelectorLoop(this, count == 1 ? "router-nio-selector" : "router-nio-selector-" + (i + 1));
+		}
+
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.configureBlocking(false);
+		serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+		serverChannel.bind(address, backlog);
+		loops[0].listen(serverChannel);
+
+		running = true;
+		for(NioSelectorLoop loop : loops) {
+			loop.start();
+		}
+	}
+
+	@Override
+	public void stop(int delaySeconds) {
+		if(!running) {
+			return;
+		}
+
+		loops[0].runOnSelector(() -> {
+			try {
+				serverChannel.close();
+			}
+			catch(IOException ignored) {
+
+			}
+		});
+
+		long deadline = System.currentTimeMillis() + delaySeconds * 1000L;
+		while(activeExchanges.get() > 0 && System.currentTimeMillis() < deadline) {
+			try {
+				Thread.sleep(50);
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+
+		running = false;
+		try {
+			for(NioSelectorLoop loop : loops) {
+				loop.join();
+			}
+			serverChannel.close();
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		catch(IOException ignored) {
+
+		}
+	}
+
+	@Override
+	public InetSocketAddress getAddress() {
+		if(serverChannel != null && serverChannel.isOpen()) {
+			try {
+				return (InetSocketAddress) serverChannel.getLocalAddress();
+			}
+			catch(IOException ignored) {
+
+			}
+		}
+		return address;
+	}
+
+	boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * @return the loop the next accepted connection goes to
+	 */
+	NioSelectorLoop nextLoop() {
+		if(loops.length == 1) {
+			return loops[0];
+		}
+		return loops[(nextLoop.getAndIncrement() & Integer.MAX_VALUE) % loops.length];
+	}
+
+}
@@ -0,0 +1,178 @@
+package org.golde.router.engine;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * One selector thread of the {@link NioHttpEngine}. It reads and parses requests for the connections it owns, and writes what their responses queued.
+ * The first loop also accepts new connections, and deals them out to every loop in turn.
+ * @author Eric Golde
+ *
+ */
+class NioSelectorLoop {
+
+	private final NioHttpEngine engine;
+	private final Selector selector;
+	private final Thread thread;
+
+	/**
+	 * Work that must be run on the selector thread
+	 */
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+	/**
+	 * Every open connection of this loop, only touched by the selector thread
+	 */
+	private final Set<NioConnection> connections = new HashSet<NioConnection>();
+
+	NioSelectorLoop(NioHttpEngine engine, String name) throws IOException {
+		this.engine = engine;
+		this.selector = Selector.open();
+		this.thread = new Thread(this::run, name);
+	}
+
+	void start() {
+		thread.start();
+	}
+
+	/**
+	 * Accept connections from the server channel on this loop
+	 */
+	void listen(ServerSocketChannel serverChannel) throws IOException {
+		serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+	}
+
+	/**
+	 * Run something on the selector thread, as soon as possible
+	 */
+	void runOnSelector(Runnable task) {
+		tasks.add(task);
+		selector.wakeup();
+	}
+
+	boolean isSelectorThread() {
+		return Thread.currentThread() == thread;
+	}
+
+	void wakeup() {
+		selector.wakeup();
+	}
+
+	void removed(NioConnection connection) {
+		connections.remove(connection);
+	}
+
+	/**
+	 * Wait for the selector thread to finish, once the engine is no longer running
+	 */
+	void join() throws InterruptedException {
+		selector.wakeup();
+		thread.join();
+	}
+
+	private void run() {
+		long lastSweep = System.currentTimeMillis();
+		try {
+			while(engine.isRunning()) {
+				selector.select(1000);
+
+				Runnable task;
+				while((task = tasks.poll()) != null) {
+					task.run();
+				}
+
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while(keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+
+					if(!key.isValid()) {
+						continue;
+					}
+
+					if(key.isAcceptable()) {
+						accept((ServerSocketChannel) key.channel());
+						continue;
+					}
+
+					NioConnection connection = (NioConnection) key.attachment();
+					if(key.isWritable()) {
+						connection.onWritable();
+					}
+					if(key.isValid() && key.isReadable()) {
+						connection.onReadable();
+					}
+				}
+
+				long now = System.currentTimeMillis();
+				if(now - lastSweep >= 1000) {
+					lastSweep = now;
+					for(NioConnection connection : connections.toArray(new NioConnection[0])) {
+						connection.closeIfIdle(now, engine.getKeepAliveTimeout());
+					}
+				}
+			}
+		}
+		catch(Throwable t) {
+			System.err.println("The NIO selector thread crashed:");
+			t.printStackTrace();
+		}
+		finally {
+			for(NioConnection connection : connections.toArray(new NioConnection[0])) {
+				connection.close();
+			}
+			try {
+				selector.close();
+			}
+			catch(IOException ignored) {
+
+			}
+		}
+	}
+
+	private void accept(ServerSocketChannel serverChannel) throws IOException {
+		SocketChannel channel;
+		while((channel = serverChannel.accept()) != null) {
+			channel.configureBlocking(false);
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+			NioSelectorLoop loop = engine.nextLoop();
+			if(loop == this) {
+				register(channel);
+			}
+			else {
+				final SocketChannel accepted = channel;
+				loop.runOnSelector(() -> loop.register(accepted));
+			}
+		}
+	}
+
+	/**
+	 * Take over a new connection. Selector thread only.
+	 */
+	private void register(SocketChannel channel) {
+		try {
+			NioConnection connection = new NioConnection(engine, this, channel);
+			connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+			connections.add(connection);
+		}
+		catch(IOException e) {
+			try {
+				channel.close();
+			}
+			catch(IOException ignored) {
+
+			}
+		}
+	}
+
+}
@@ -0,0 +1,69 @@
+package org.golde.router.engine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import lombok.AllArgsConstructor;
+
+/**
+ * An {@link Exchange} backed by a com.sun.net.httpserver.HttpExchange
+ * @author Eric Golde
+ *
+ */
+@AllArgsConstructor
+class SunExchange implements Exchange {
+
+	private final HttpExchange exchange;
+
+	@Override
+	public String getRequestMethod() {
+		return exchange.getRequestMethod();
+	}
+
+	@Override
+	public String getRequestURI() {
+		return exchange.getRequestURI().toString();
+	}
+
+	@Override
+	public Map<String, List<String>> getRequestHeaders() {
+		return exchange.getRequestHeaders();
+	}
+
+	@Override
+	public InputStream getRequestBody() {
+		return exchange.getRequestBody();
+	}
+
+	@Override
+	public Map<String, List<String>> getResponseHeaders() {
+		return exchange.getResponseHeaders();
+	}
+
+	@Override
+	public void sendResponseHeaders(int code, long length) throws IOException {
+		exchange.sendResponseHeaders(code, length);
+	}
+
+	@Override
+	public OutputStream getResponseBody() {
+		return exchange.getResponseBody();
+	}
+
+	@Override
+	public InetSocketAddress getRemoteAddress() {
+		return exchange.getRemoteAddress();
+	}
+
+	@Override
+	public void close() {
+		exchange.close();
+	}
+
+}
@@ -0,0 +1,67 @@
+package org.golde.router.engine;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executor;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An engine that runs on the com.sun.net.httpserver.HttpServer that ships with the JDK.
+ * @author Eric Golde
+ *
+ */
+public class SunHttpEngine implements HttpEngine {
+
+	/**
+	 * Internal com.sun http server
+	 */
+	private final HttpServer server;
+
+	/**
+	 * Create the engine on a specific port
+	 * @param port port for http server to be on
+	 * @throws IOException if it fails to create a InetSocketAddress
+	 */
+	public SunHttpEngine(int port) throws IOException {
+		this(new InetSocketAddress(port));
+	}
+
+	/**
+	 * Create the engine on a specific address
+	 * @param address address for http server to be on
+	 * @throws IOException if it fails to bind to the address
+	 */
+	public SunHttpEngine(InetSocketAddress address) throws IOException {
+		this(address, 0);
+	}
+
+	/**
+	 * Create the engine on a specific address, with a bigger accept queue for bursts of new connections.
+	 * The com.sun server has a single dispatcher thread per instance. To use more, combine several instances on different ports with {@link MultiHttpEngine}, or use {@link NioHttpEngine}.
+	 * @param address address for http server to be on
+	 * @param backlog how many connections the OS queues while the dispatcher thread is busy. 0 uses the OS default.
+	 * @throws IOException if it fails to bind to the address
+	 */
+	public SunHttpEngine(InetSocketAddress address, int backlog) throws IOException {
+		server = HttpServer.create(address, backlog);
+	}
+
+	@Override
+	public void start(final ExchangeHandler handler, Executor executor) {
+		server.createContext("/", exchange -> handler.handle(new SunExchange(exchange)));
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	@Override
+	public void stop(int delaySeconds) {
+		server.stop(delaySeconds);
+	}
+
+	@Override
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+}
@@ -7,6 +7,22 @@ package org.golde.router.enums;
  */
 public enum RequestMethod {
 
-	GET, POST, PUT, PATCH, DELETE, OPTIONS
-	
+	GET, POST, PUT, PATCH, DELETE, OPTIONS;
+
+	private static final RequestMethod[] VALUES = values();
+
+	/**
+	 * Find the request method from the name sent by the client. Case insensitive.
+	 * @param name the name of the method, for example "GET"
+	 * @return the request method, or null if we do not support it
+	 */
+	public static RequestMethod fromName(String name) {
+		for(RequestMethod method : VALUES) {
+			if(method.name().equalsIgnoreCase(name)) {
+				return method;
+			}
+		}
+		return null;
+	}
+
 }
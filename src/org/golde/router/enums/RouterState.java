@@ -0,0 +1,30 @@
+package org.golde.router.enums;
+
+/**
+ * Where a router is in its life. See Router.getState().
+ * @author Eric Golde
+ *
+ */
+public enum RouterState {
+
+	/**
+	 * Created, but start() was not called yet
+	 */
+	CREATED,
+
+	/**
+	 * Serving requests
+	 */
+	RUNNING,
+
+	/**
+	 * stop() was called. No new connections are accepted, and requests that are still running are allowed to finish.
+	 */
+	DRAINING,
+
+	/**
+	 * Stopped for good. A stopped router can't be started again.
+	 */
+	STOPPED;
+
+}
@@ -17,9 +17,11 @@ public enum StatusCode {
 	OK(200, "OK"),
 	CREATED(201, "Created"),
 	NO_CONTENT(204, "No Content"),
+	PARTIAL_CONTENT(206, "Partial Content"),
 	
 	//300s
 	MOVED_PERMANENTLY(301, "Moved Permanently"),
+	NOT_MODIFIED(304, "Not Modified"),
 	
 	//400s
 	BAD_REQUEST(400, "Bad Request"),
@@ -29,6 +31,8 @@ public enum StatusCode {
 	METHOD_NOT_ALLOWED(405, "Method Not Allowed"),
 	REQUEST_TIMEOUT(408, "Request Timeout"),
 	GONE(410, "Gone"),
+	PAYLOAD_TOO_LARGE(413, "Payload Too Large"),
+	RANGE_NOT_SATISFIABLE(416, "Range Not Satisfiable"),
 	TOO_MANY_REQUESTS(429, "Too Many Requests"),
 	
 	//500s
@@ -0,0 +1,42 @@
+package org.golde.router.exceptions;
+
+import org.golde.router.enums.StatusCode;
+
+import lombok.Getter;
+
+/**
+ * Throw this from a route (or anything it calls) to stop and answer the request with a status code.
+ * If the route already sent a response, the exception is only logged.
+ * @author Eric Golde
+ *
+ */
+public class HttpStatusException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The status code to answer with
+	 * @return the status code
+	 */
+	@Getter private final StatusCode statusCode;
+
+	/**
+	 * @param statusCode the status code to answer with
+	 * @param message the message sent back to the client as plain text
+	 */
+	public HttpStatusException(StatusCode statusCode, String message) {
+		super(message);
+		this.statusCode = statusCode;
+	}
+
+	/**
+	 * @param statusCode the status code to answer with
+	 * @param message the message sent back to the client as plain text
+	 * @param cause what caused it
+	 */
+	public HttpStatusException(StatusCode statusCode, String message, Throwable cause) {
+		super(message, cause);
+		this.statusCode = statusCode;
+	}
+
+}
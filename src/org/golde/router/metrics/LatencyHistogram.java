@@ -0,0 +1,142 @@
+package org.golde.router.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock free histogram of durations in nanoseconds, in the style of HdrHistogram.
+ * Every power of two is split into 8 buckets, so any percentile is within about 6% of the real value.
+ * Recording is a couple of atomic adds, no locks and no allocation.
+ * The buckets are split into a few stripes picked by the recording thread, so threads on a busy route don't all fight over the same cache lines.
+ * @author Eric Golde
+ *
+ */
+public final class LatencyHistogram {
+
+	private static final int SUB_BITS = 3;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+
+	/**
+	 * Anything slower than 2^40 nanoseconds (about 18 minutes) is counted in the last bucket
+	 */
+	private static final int MAX_EXPONENT = 40;
+	private static final long MAX_VALUE = (1L << MAX_EXPONENT) - 1;
+	private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 1) * SUB_COUNT;
+
+	/**
+	 * A power of two, up to 8, based on the number of cores
+	 */
+	private static final int STRIPES = Math.min(8, Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1));
+
+	private final AtomicLongArray[] counts = new AtomicLongArray[STRIPES];
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	public LatencyHistogram() {
+		for(int i = 0; i < STRIPES; i++) {
+			counts[i] = new AtomicLongArray(BUCKETS);
+		}
+	}
+
+	/**
+	 * Record a single duration
+	 * @param nanos the duration in nanoseconds
+	 */
+	public void record(long nanos) {
+		if(nanos < 0) {
+			nanos = 0;
+		}
+		long id = Thread.currentThread().getId();
+		counts[(int) (id ^ (id >>> 16)) & (STRIPES - 1)].incrementAndGet(index(Math.min(nanos, MAX_VALUE)));
+		count.increment();
+		sum.add(nanos);
+
+		long current = max.get();
+		while(nanos > current && !max.compareAndSet(current, nanos)) {
+			current = max.get();
+		}
+	}
+
+	/**
+	 * @return how many durations were recorded
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * @return the total of every duration, in nanoseconds
+	 */
+	public long getSum() {
+		return sum.sum();
+	}
+
+	/**
+	 * @return the slowest duration, in nanoseconds
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @return the average duration in nanoseconds, or 0 if nothing was recorded
+	 */
+	public double getMean() {
+		long c = count.sum();
+		return c == 0 ? 0 : (double) sum.sum() / c;
+	}
+
+	/**
+	 * Get a percentile, for example 99 for the duration 99% of requests were faster than
+	 * @param percentile from 0 to 100
+	 * @return the duration in nanoseconds, or 0 if nothing was recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long[] snapshot = new long[BUCKETS];
+		long total = 0;
+		for(AtomicLongArray stripe : counts) {
+			for(int i = 0; i < BUCKETS; i++) {
+				long c = stripe.get(i);
+				snapshot[i] += c;
+				total += c;
+			}
+		}
+		if(total == 0) {
+			return 0;
+		}
+
+		long target = Math.max(1, (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100));
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if(seen >= target) {
+				//Middle of the bucket, but never more than the real max
+				long low = lowestValue(i);
+				long high = i + 1 < BUCKETS ? lowestValue(i + 1) - 1 : MAX_VALUE;
+				return Math.min(low + (high - low) / 2, max.get());
+			}
+		}
+		return max.get();
+	}
+
+	private static int index(long value) {
+		if(value < SUB_COUNT) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+		return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+	}
+
+	private static long lowestValue(int index) {
+		if(index < SUB_COUNT) {
+			return index;
+		}
+		int exponent = index / SUB_COUNT + SUB_BITS - 1;
+		int sub = index % SUB_COUNT;
+		return (long) (SUB_COUNT + sub) << (exponent - SUB_BITS);
+	}
+
+}
@@ -0,0 +1,92 @@
+package org.golde.router.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import lombok.Getter;
+
+/**
+ * Request counts, status codes, bytes written and latency for a single @Route.
+ * @author Eric Golde
+ *
+ */
+public final class RouteMetrics {
+
+	/**
+	 * The http method of the route, for example GET
+	 * @return the method
+	 */
+	@Getter private final String method;
+
+	/**
+	 * The @Route value
+	 * @return the route
+	 */
+	@Getter private final String route;
+
+	/**
+	 * How long the route took, from just before middleware ran until the route returned
+	 * @return the latency histogram
+	 */
+	@Getter private final LatencyHistogram latency = new LatencyHistogram();
+
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder bytesWritten = new LongAdder();
+
+	/**
+	 * Responses by status class. Index 1 is 1xx, up to 5 for 5xx. Index 0 is requests where nothing was sent.
+	 */
+	private final LongAdder[] statusClasses = new LongAdder[6];
+
+	/**
+	 * Creates metrics for a route. Not normally used by the end user.
+	 * @param method the http method
+	 * @param route the @Route value
+	 */
+	public RouteMetrics(String method, String route) {
+		this.method = method;
+		this.route = route;
+		for(int i = 0; i < statusClasses.length; i++) {
+			statusClasses[i] = new LongAdder();
+		}
+	}
+
+	void record(int status, long nanos, long bytes) {
+		count(status, bytes);
+		latency.record(nanos);
+	}
+
+	/**
+	 * Count a response without a latency sample, for requests that were refused before the route ran
+	 */
+	void count(int status, long bytes) {
+		requests.increment();
+		statusClasses[status >= 100 && status < 600 ? status / 100 : 0].increment();
+		if(bytes > 0) {
+			bytesWritten.add(bytes);
+		}
+	}
+
+	/**
+	 * @return how many requests this route handled
+	 */
+	public long getRequests() {
+		return requests.sum();
+	}
+
+	/**
+	 * @return how many bytes of response body this route sent
+	 */
+	public long getBytesWritten() {
+		return bytesWritten.sum();
+	}
+
+	/**
+	 * Get how many responses had a status code in a class
+	 * @param statusClass 2 for 2xx, 4 for 4xx and so on. 0 for requests that never sent a response.
+	 * @return the count
+	 */
+	public long getStatusCount(int statusClass) {
+		return statusClass >= 0 && statusClass < statusClasses.length ? statusClasses[statusClass].sum() : 0;
+	}
+
+}
@@ -0,0 +1,271 @@
+package org.golde.router.metrics;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import lombok.Getter;
+
+/**
+ * Every metric the router keeps. Get it with {@link org.golde.router.Router#getMetrics()}.
+ * Register a {@link org.golde.router.routes.MetricsRoute} to serve these at /metrics for Prometheus.
+ * @author Eric Golde
+ *
+ */
+public final class RouterMetrics {
+
+	private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+	private final List<RouteMetrics> routes = new CopyOnWriteArrayList<RouteMetrics>();
+
+	/**
+	 * Requests that didn't match a @Route. Static files and 404s.
+	 * @return the metrics for unmatched requests
+	 */
+	@Getter private final RouteMetrics unmatched = new RouteMetrics("", "<unmatched>");
+
+	private final LongAdder notFound = new LongAdder();
+	private final LongAdder inFlight = new LongAdder();
+
+	/**
+	 * Count of every exact status code that was sent. Adders are only created for codes that are actually used.
+	 */
+	private final AtomicReferenceArray<LongAdder> statusCodes = new AtomicReferenceArray<LongAdder>(600);
+
+	private final Supplier<Executor> executor;
+
+	/**
+	 * Creates the metrics. Not normally used by the end user.
+	 * @param executor gets the executor requests run on, to report how many are waiting
+	 */
+	public RouterMetrics(Supplier<Executor> executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Start tracking a route. Used internally when a route is registered.
+	 * @param route the route metrics
+	 */
+	public void addRoute(RouteMetrics route) {
+		routes.add(route);
+	}
+
+	/**
+	 * Stop tracking a route. Used internally when a route is unregistered.
+	 * @param route the route metrics
+	 */
+	public void removeRoute(RouteMetrics route) {
+		routes.remove(route);
+	}
+
+	/**
+	 * Record a finished request. Used internally by the router.
+	 * @param route the route that ran, or {@link #getUnmatched()}
+	 * @param status the status code that was sent, 0 if none was
+	 * @param nanos how long it took
+	 * @param bytes how many body bytes were sent
+	 */
+	public void record(RouteMetrics route, int status, long nanos, long bytes) {
+		route.record(status, nanos, bytes);
+		countStatus(status);
+	}
+
+	/**
+	 * Record a request that was refused before any route ran, such as a 429 or a 503 while shutting down. Used internally by the router.
+	 * It counts towards the status codes, but not the latency, so a route that is being throttled doesn't look like it got faster.
+	 * @param route the route that was asked for, or {@link #getUnmatched()}
+	 * @param status the status code that was sent
+	 * @param bytes how many body bytes were sent
+	 */
+	public void recordRejected(RouteMetrics route, int status, long bytes) {
+		route.count(status, bytes);
+		countStatus(status);
+	}
+
+	private void countStatus(int status) {
+		if(status > 0 && status < 600) {
+			LongAdder adder = statusCodes.get(status);
+			if(adder == null) {
+				statusCodes.compareAndSet(status, null, new LongAdder());
+				adder = statusCodes.get(status);
+			}
+			adder.increment();
+		}
+		if(status == 404) {
+			notFound.increment();
+		}
+	}
+
+	/**
+	 * Used internally by the router when a request starts
+	 */
+	public void requestStarted() {
+		inFlight.increment();
+	}
+
+	/**
+	 * Used internally by the router when a request ends
+	 */
+	public void requestFinished() {
+		inFlight.decrement();
+	}
+
+	/**
+	 * @return metrics for every registered route
+	 */
+	public List<RouteMetrics> getRoutes() {
+		return Collections.unmodifiableList(routes);
+	}
+
+	/**
+	 * @return how many 404 Not Found responses were sent, by the 404 page or by routes
+	 */
+	public long getNotFound() {
+		return notFound.sum();
+	}
+
+	/**
+	 * @return how many requests are running right now
+	 */
+	public long getInFlight() {
+		return inFlight.sum();
+	}
+
+	/**
+	 * Get how many responses were sent with a status code
+	 * @param code the status code, for example 200
+	 * @return the count
+	 */
+	public long getStatusCount(int code) {
+		if(code < 0 || code >= 600) {
+			return 0;
+		}
+		LongAdder adder = statusCodes.get(code);
+		return adder == null ? 0 : adder.sum();
+	}
+
+	/**
+	 * @return how many requests are waiting for a thread, or -1 if the executor doesn't say
+	 */
+	public long getQueueDepth() {
+		Executor e = executor.get();
+		return e instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) e).getQueue().size() : -1;
+	}
+
+	/**
+	 * @return how many threads are running requests, or -1 if the executor doesn't say
+	 */
+	public long getActiveThreads() {
+		Executor e = executor.get();
+		return e instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) e).getActiveCount() : -1;
+	}
+
+	/**
+	 * Write every metric in the Prometheus text format
+	 * @param out where to write
+	 * @throws IOException if writing fails
+	 */
+	public void writePrometheus(Writer out) throws IOException {
+		List<RouteMetrics> all = new ArrayList<RouteMetrics>(routes.size() + 1);
+		all.addAll(routes);
+		all.add(unmatched);
+
+		out.write("# HELP router_requests_total Requests handled, by route and status class.\n");
+		out.write("# TYPE router_requests_total counter\n");
+		for(RouteMetrics route : all) {
+			for(int statusClass = 0; statusClass < 6; statusClass++) {
+				long count = route.getStatusCount(statusClass);
+				if(count != 0) {
+					out.write("router_requests_total{" + labels(route) + ",status=\"" + (statusClass == 0 ? "none" : statusClass + "xx") + "\"} " + count + "\n");
+				}
+			}
+		}
+
+		out.write("# HELP router_request_duration_seconds How long routes took, including middleware.\n");
+		out.write("# TYPE router_request_duration_seconds summary\n");
+		for(RouteMetrics route : all) {
+			LatencyHistogram latency = route.getLatency();
+			long count = latency.getCount();
+			if(count == 0) {
+				continue;
+			}
+			String labels = labels(route);
+			for(double quantile : QUANTILES) {
+				out.write("router_request_duration_seconds{" + labels + ",quantile=\"" + quantile + "\"} " + seconds(latency.getValueAtPercentile(quantile * 100)) + "\n");
+			}
+			out.write("router_request_duration_seconds_sum{" + labels + "} " + seconds(latency.getSum()) + "\n");
+			out.write("router_request_duration_seconds_count{" + labels + "} " + count + "\n");
+		}
+
+		out.write("# HELP router_response_bytes_total Response body bytes sent, by route.\n");
+		out.write("# TYPE router_response_bytes_total counter\n");
+		for(RouteMetrics route : all) {
+			if(route.getRequests() != 0) {
+				out.write("router_response_bytes_total{" + labels(route) + "} " + route.getBytesWritten() + "\n");
+			}
+		}
+
+		out.write("# HELP router_responses_total Responses sent, by exact status code.\n");
+		out.write("# TYPE router_responses_total counter\n");
+		for(int code = 100; code < 600; code++) {
+			long count = getStatusCount(code);
+			if(count != 0) {
+				out.write("router_responses_total{code=\"" + code + "\"} " + count + "\n");
+			}
+		}
+
+		out.write("# HELP router_not_found_total 404 Not Found responses sent.\n");
+		out.write("# TYPE router_not_found_total counter\n");
+		out.write("router_not_found_total " + getNotFound() + "\n");
+
+		out.write("# HELP router_requests_in_flight Requests running right now.\n");
+		out.write("# TYPE router_requests_in_flight gauge\n");
+		out.write("router_requests_in_flight " + getInFlight() + "\n");
+
+		long queueDepth = getQueueDepth();
+		if(queueDepth >= 0) {
+			out.write("# HELP router_executor_queue_depth Requests waiting for a worker thread.\n");
+			out.write("# TYPE router_executor_queue_depth gauge\n");
+			out.write("router_executor_queue_depth " + queueDepth + "\n");
+			out.write("# HELP router_executor_active_threads Worker threads running a request.\n");
+			out.write("# TYPE router_executor_active_threads gauge\n");
+			out.write("router_executor_active_threads " + getActiveThreads() + "\n");
+		}
+	}
+
+	/**
+	 * @return every metric in the Prometheus text format
+	 */
+	public String toPrometheus() {
+		StringWriter writer = new StringWriter(4096);
+		try {
+			writePrometheus(writer);
+		}
+		catch(IOException e) {
+			//StringWriter never throws
+		}
+		return writer.toString();
+	}
+
+	private static String labels(RouteMetrics route) {
+		return "method=\"" + escape(route.getMethod()) + "\",route=\"" + escape(route.getRoute()) + "\"";
+	}
+
+	private static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	private static String seconds(double nanos) {
+		return Double.toString(nanos / 1_000_000_000d);
+	}
+
+}
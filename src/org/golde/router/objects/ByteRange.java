@@ -0,0 +1,128 @@
+package org.golde.router.objects;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+
+/**
+ * A single range from a "Range: bytes=..." request header, resolved against the length of the file.
+ * @author Eric Golde
+ *
+ */
+@AllArgsConstructor
+class ByteRange {
+
+	/**
+	 * More ranges than this and we just send the whole file, so clients can't make us send thousands of tiny parts
+	 */
+	private static final int MAX_RANGES = 16;
+
+	/**
+	 * First byte, inclusive
+	 */
+	final long start;
+
+	/**
+	 * Last byte, inclusive
+	 */
+	final long end;
+
+	long length() {
+		return end - start + 1;
+	}
+
+	/**
+	 * Parse a Range header
+	 * @param header the value of the Range header
+	 * @param length the length of the file
+	 * @return the ranges to send, sorted, with overlapping and adjacent ranges merged. Empty if none of them can be satisfied.
+	 * Null if the header should be ignored and the whole file sent, which includes ranges that add up to more than the file (RFC 7233 6.1).
+	 */
+	static List<ByteRange> parse(String header, long length) {
+		if(header == null || !header.startsWith("bytes=")) {
+			return null;
+		}
+
+		String[] specs = header.substring(6).split(",");
+		if(specs.length > MAX_RANGES) {
+			return null;
+		}
+
+		List<ByteRange> ranges = new ArrayList<ByteRange>(specs.length);
+		for(String spec : specs) {
+			spec = spec.trim();
+			int dash = spec.indexOf('-');
+			if(dash == -1) {
+				return null;
+			}
+
+			try {
+				long start;
+				long end;
+				if(dash == 0) {
+					//bytes=-500 is the last 500 bytes
+					long suffix = Long.parseLong(spec.substring(1));
+					if(suffix <= 0) {
+						continue;
+					}
+					start = Math.max(0, length - suffix);
+					end = length - 1;
+				}
+				else {
+					start = Long.parseLong(spec.substring(0, dash));
+					end = dash == spec.length() - 1 ? length - 1 : Long.parseLong(spec.substring(dash + 1));
+					if(end < start) {
+						return null;
+					}
+					end = Math.min(end, length - 1);
+				}
+
+				if(start < length) {
+					ranges.add(new ByteRange(start, end));
+				}
+			}
+			catch(NumberFormatException e) {
+				return null;
+			}
+		}
+
+		return coalesce(ranges, length);
+	}
+
+	/**
+	 * Sort the ranges and merge the ones that overlap or touch, so no byte is sent twice
+	 * @return the merged ranges, or null if the ranges asked for more bytes than the whole file, which only happens when they overlap
+	 */
+	private static List<ByteRange> coalesce(List<ByteRange> ranges, long length) {
+		if(ranges.size() < 2) {
+			return ranges;
+		}
+
+		long requested = 0;
+		for(ByteRange range : ranges) {
+			requested += range.length();
+		}
+		if(requested > length) {
+			return null;
+		}
+
+		ranges.sort(Comparator.comparingLong(range -> range.start));
+		List<ByteRange> merged = new ArrayList<ByteRange>(ranges.size());
+		ByteRange current = ranges.get(0);
+		for(int i = 1; i < ranges.size(); i++) {
+			ByteRange next = ranges.get(i);
+			if(next.start <= current.end + 1) {
+				current = new ByteRange(current.start, Math.max(current.end, next.end));
+			}
+			else {
+				merged.add(current);
+				current = next;
+			}
+		}
+		merged.add(current);
+		return merged;
+	}
+
+}
@@ -0,0 +1,77 @@
+package org.golde.router.objects;
+
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * A response stored by a {@link ResponseCache}, ready to be sent again without running the route.
+ * Compressed copies are made the first time a client asks for them, and kept with the entry.
+ * @author Eric Golde
+ *
+ */
+public final class CachedResponse {
+
+	final String contentType;
+	final byte[] data;
+	final String etag;
+
+	/**
+	 * Headers the route set, other than the ones send() sets itself
+	 */
+	final Map<String, List<String>> headers;
+
+	/**
+	 * When the entry expires, from System.nanoTime()
+	 */
+	final long expires;
+
+	/**
+	 * Set by every hit, cleared by the {@link ResponseCache} clock hand. Starts set, so a new entry survives the first pass.
+	 */
+	volatile boolean used = true;
+
+	private volatile byte[] gzip;
+	private volatile byte[] deflate;
+
+	CachedResponse(String contentType, byte[] data, Map<String, List<String>> headers, long ttlMillis) {
+		this.contentType = contentType;
+		this.data = data;
+		this.headers = headers;
+		this.expires = System.nanoTime() + ttlMillis * 1000000L;
+
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, data.length);
+		this.etag = "\"" + Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(data.length) + "\"";
+	}
+
+	boolean isExpired(long now) {
+		return now - expires >= 0;
+	}
+
+	/**
+	 * @param encoding {@link Compression#GZIP} or {@link Compression#DEFLATE}
+	 * @param level the compression level, from 1 to 9
+	 * @return the body compressed with the encoding. Two threads may both compress it the first time, which is harmless.
+	 */
+	byte[] compressed(String encoding, int level) {
+		boolean isGzip = encoding.equals(Compression.GZIP);
+		byte[] compressed = isGzip ? gzip : deflate;
+		if(compressed == null) {
+			compressed = CompressingOutputStream.compress(data, encoding, level);
+			if(isGzip) {
+				gzip = compressed;
+			}
+			else {
+				deflate = compressed;
+			}
+		}
+		return compressed;
+	}
+
+	long size() {
+		//Rough overhead of the entry and its headers, plus room for a compressed copy, which is usually far smaller than the body
+		return 512 + data.length + data.length / 2;
+	}
+
+}
@@ -0,0 +1,149 @@
+package org.golde.router.objects;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses a response body with gzip or deflate, using a Deflater from {@link DeflaterPool}.
+ * Unlike GZIPOutputStream, flush() pushes everything written so far out to the client, so streamed responses don't stall.
+ * The Deflater goes back to the pool when the stream is closed.
+ * @author Eric Golde
+ *
+ */
+class CompressingOutputStream extends OutputStream {
+
+	private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+	private final OutputStream out;
+	private final boolean gzip;
+	private final DeflaterPool pool;
+	private final byte[] buffer = new byte[8192];
+	private final CRC32 crc;
+
+	private Deflater deflater;
+	private boolean headerWritten = false;
+
+	/**
+	 * @param out the response body
+	 * @param encoding {@link Compression#GZIP} or {@link Compression#DEFLATE}
+	 * @param level the compression level, from 1 to 9
+	 */
+	CompressingOutputStream(OutputStream out, String encoding, int level) {
+		this.out = out;
+		this.gzip = encoding.equals(Compression.GZIP);
+		this.pool = gzip ? DeflaterPool.RAW : DeflaterPool.ZLIB;
+		this.crc = gzip ? new CRC32() : null;
+		this.deflater = pool.acquire(level);
+	}
+
+	/**
+	 * Compress a whole body at once
+	 * @param data the body
+	 * @param encoding {@link Compression#GZIP} or {@link Compression#DEFLATE}
+	 * @param level the compression level, from 1 to 9
+	 * @return the compressed body
+	 */
+	static byte[] compress(byte[] data, String encoding, int level) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+		try(CompressingOutputStream compressing = new CompressingOutputStream(out, encoding, level)) {
+			compressing.write(data, 0, data.length);
+		}
+		catch(IOException e) {
+			//ByteArrayOutputStream never throws
+			throw new UncheckedIOException(e);
+		}
+		return out.toByteArray();
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] {(byte) b}, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if(deflater == null) {
+			throw new IOException("Stream closed");
+		}
+		if(len == 0) {
+			return;
+		}
+		writeHeader();
+		if(crc != null) {
+			crc.update(b, off, len);
+		}
+		deflater.setInput(b, off, len);
+		while(!deflater.needsInput()) {
+			deflate(Deflater.NO_FLUSH);
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if(deflater == null) {
+			return;
+		}
+		writeHeader();
+		int n;
+		do {
+			n = deflate(Deflater.SYNC_FLUSH);
+		}
+		while(n == buffer.length);
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if(deflater == null) {
+			return;
+		}
+		try {
+			writeHeader();
+			deflater.finish();
+			while(!deflater.finished()) {
+				deflate(Deflater.NO_FLUSH);
+			}
+			if(gzip) {
+				writeInt((int) crc.getValue());
+				writeInt((int) deflater.getBytesRead());
+			}
+		}
+		finally {
+			pool.release(deflater);
+			deflater = null;
+		}
+		out.close();
+	}
+
+	private void writeHeader() throws IOException {
+		if(!headerWritten) {
+			headerWritten = true;
+			if(gzip) {
+				out.write(GZIP_HEADER);
+			}
+		}
+	}
+
+	private int deflate(int flush) throws IOException {
+		int n = deflater.deflate(buffer, 0, buffer.length, flush);
+		if(n > 0) {
+			out.write(buffer, 0, n);
+		}
+		return n;
+	}
+
+	/**
+	 * Little endian, like the rest of the gzip trailer
+	 */
+	private void writeInt(int value) throws IOException {
+		out.write(value & 0xff);
+		out.write((value >> 8) & 0xff);
+		out.write((value >> 16) & 0xff);
+		out.write((value >> 24) & 0xff);
+	}
+
+}
@@ -0,0 +1,106 @@
+package org.golde.router.objects;
+
+import java.util.Set;
+
+/**
+ * Helpers for picking a Content-Encoding from the Accept-Encoding header.
+ * @author Eric Golde
+ *
+ */
+public final class Compression {
+
+	public static final String GZIP = "gzip";
+	public static final String DEFLATE = "deflate";
+
+	private Compression() {
+
+	}
+
+	/**
+	 * Pick the encoding to compress a response with. gzip is preferred over deflate when both are equally accepted.
+	 * @param acceptEncoding the Accept-Encoding header, or null
+	 * @return {@link #GZIP}, {@link #DEFLATE}, or null to send the response as is
+	 */
+	public static String negotiate(String acceptEncoding) {
+		if(acceptEncoding == null) {
+			return null;
+		}
+		double gzip = quality(acceptEncoding, GZIP);
+		double deflate = quality(acceptEncoding, DEFLATE);
+		if(gzip <= 0 && deflate <= 0) {
+			return null;
+		}
+		return gzip >= deflate ? GZIP : DEFLATE;
+	}
+
+	/**
+	 * Check if the client accepts an encoding
+	 * @param acceptEncoding the Accept-Encoding header, or null
+	 * @param encoding the encoding, for example "br"
+	 * @return true if the encoding is listed, or matched by *, without q=0
+	 */
+	public static boolean accepts(String acceptEncoding, String encoding) {
+		return acceptEncoding != null && quality(acceptEncoding, encoding) > 0;
+	}
+
+	/**
+	 * @return the q value the header gives the encoding. An exact match wins over *. 0 if it is not accepted at all.
+	 */
+	private static double quality(String acceptEncoding, String encoding) {
+		double wildcard = 0;
+		int start = 0;
+		int length = acceptEncoding.length();
+		while(start < length) {
+			int end = acceptEncoding.indexOf(',', start);
+			if(end == -1) {
+				end = length;
+			}
+
+			int semicolon = acceptEncoding.indexOf(';', start);
+			int nameEnd = semicolon == -1 || semicolon > end ? end : semicolon;
+			String name = acceptEncoding.substring(start, nameEnd).trim();
+
+			double q = 1;
+			if(nameEnd != end) {
+				int qIndex = acceptEncoding.indexOf("q=", nameEnd);
+				if(qIndex != -1 && qIndex < end) {
+					try {
+						q = Double.parseDouble(acceptEncoding.substring(qIndex + 2, end).trim());
+					}
+					catch(NumberFormatException e) {
+						q = 0;
+					}
+				}
+			}
+
+			if(name.equalsIgnoreCase(encoding)) {
+				return q;
+			}
+			if(name.equals("*")) {
+				wildcard = q;
+			}
+			start = end + 1;
+		}
+		return wildcard;
+	}
+
+	/**
+	 * Check a content type against a list of types worth compressing
+	 * @param contentType the Content-Type, parameters like charset are ignored
+	 * @param types exact types like application/json, or a whole family like text/*
+	 * @return true if it is in the list
+	 */
+	public static boolean isCompressible(String contentType, Set<String> types) {
+		if(contentType == null) {
+			return false;
+		}
+		int semicolon = contentType.indexOf(';');
+		String mime = (semicolon == -1 ? contentType : contentType.substring(0, semicolon)).trim().toLowerCase();
+		if(types.contains(mime)) {
+			return true;
+		}
+		int slash = mime.indexOf('/');
+		return slash != -1 && types.contains(mime.substring(0, slash + 1) + "*");
+	}
+
+}
@@ -0,0 +1,34 @@
+package org.golde.router.objects;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import lombok.Getter;
+
+/**
+ * Counts the bytes written to a response body whose length wasn't known up front.
+ * @author Eric Golde
+ *
+ */
+class CountingOutputStream extends FilterOutputStream {
+
+	@Getter private long count = 0;
+
+	CountingOutputStream(OutputStream out) {
+		super(out);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		out.write(b);
+		count++;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		out.write(b, off, len);
+		count += len;
+	}
+
+}
@@ -0,0 +1,55 @@
+package org.golde.router.objects;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+/**
+ * Reuses Deflaters between responses. Each one holds native memory, so making a new one for every response is slow and leans on finalization to free it.
+ * @author Eric Golde
+ *
+ */
+class DeflaterPool {
+
+	/**
+	 * Raw deflate, used for gzip where we write the header and trailer ourselves
+	 */
+	static final DeflaterPool RAW = new DeflaterPool(true, 64);
+
+	/**
+	 * Deflate with the zlib header, which is what Content-Encoding: deflate means
+	 */
+	static final DeflaterPool ZLIB = new DeflaterPool(false, 64);
+
+	private final boolean nowrap;
+	private final int max;
+	private final ConcurrentLinkedQueue<Deflater> pool = new ConcurrentLinkedQueue<Deflater>();
+	private final AtomicInteger size = new AtomicInteger();
+
+	private DeflaterPool(boolean nowrap, int max) {
+		this.nowrap = nowrap;
+		this.max = max;
+	}
+
+	Deflater acquire(int level) {
+		Deflater deflater = pool.poll();
+		if(deflater == null) {
+			return new Deflater(level, nowrap);
+		}
+		size.decrementAndGet();
+		deflater.setLevel(level);
+		return deflater;
+	}
+
+	void release(Deflater deflater) {
+		deflater.reset();
+		if(size.incrementAndGet() <= max) {
+			pool.offer(deflater);
+		}
+		else {
+			size.decrementAndGet();
+			deflater.end();
+		}
+	}
+
+}
@@ -0,0 +1,186 @@
+package org.golde.router.objects;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.golde.router.RouterExecutors;
+
+import com.google.gson.Gson;
+
+/**
+ * A Server-Sent Events stream, for pushing live updates to a browser's EventSource. Get one from {@link Response#sse()}.
+ * Keep it after the route returns and send to it from any thread. Every send is flushed to the client straight away.
+ * Sends return false instead of throwing once the client is gone, so a broadcaster can simply drop the streams that return false.
+ * @author Eric Golde
+ *
+ */
+public class EventStream {
+
+	private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.UTF_8);
+
+	private final ResponseStream stream;
+	private final Gson gson;
+
+	private volatile ScheduledFuture<?> heartbeat;
+
+	EventStream(ResponseStream stream, Gson gson) {
+		this.stream = stream;
+		this.gson = gson;
+		stream.onClose(() -> {
+			ScheduledFuture<?> h = heartbeat;
+			if(h != null) {
+				h.cancel(false);
+			}
+		});
+	}
+
+	/**
+	 * Send an unnamed event, which the browser gets in EventSource.onmessage
+	 * @param data the data. Can contain new lines. Null is sent as empty data.
+	 * @return false if the client is gone
+	 */
+	public boolean send(String data) {
+		return send(null, null, data);
+	}
+
+	/**
+	 * Send a named event, which the browser gets with EventSource.addEventListener(event, ...)
+	 * @param event the event name, or null for an unnamed event
+	 * @param data the data. Can contain new lines. Null is sent as empty data.
+	 * @return false if the client is gone
+	 */
+	public boolean send(String event, String data) {
+		return send(null, event, data);
+	}
+
+	/**
+	 * Send an event with an id. The browser sends the last id it got back in the Last-Event-ID header when it reconnects.
+	 * @param id the event id, or null for none
+	 * @param event the event name, or null for an unnamed event
+	 * @param data the data. Can contain new lines, \n, \r\n or \r. Null is sent as empty data.
+	 * @return false if the client is gone
+	 */
+	public boolean send(String id, String event, String data) {
+		if(data == null) {
+			data = "";
+		}
+		StringBuilder sb = new StringBuilder(data.length() + 32);
+		if(id != null) {
+			sb.append("id: ").append(id).append('\n');
+		}
+		if(event != null) {
+			sb.append("event: ").append(event).append('\n');
+		}
+		//EventSource ends a line at \n, \r\n or a lone \r, so every one of them has to start a new data: line
+		int start = 0;
+		for(int i = 0; i < data.length(); i++) {
+			char c = data.charAt(i);
+			if(c == '\n' || c == '\r') {
+				sb.append("data: ").append(data, start, i).append('\n');
+				if(c == '\r' && i + 1 < data.length() && data.charAt(i + 1) == '\n') {
+					i++;
+				}
+				start = i + 1;
+			}
+		}
+		sb.append("data: ").append(data, start, data.length()).append("\n\n");
+		return write(sb.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Serialize an object to JSON with the route's Gson, and send it as a named event
+	 * @param event the event name, or null for an unnamed event
+	 * @param object the object to send
+	 * @return false if the client is gone
+	 */
+	public boolean sendJSON(String event, Object object) {
+		//Pretty printed JSON still works, every line becomes its own data: line
+		return send(null, event, gson.toJson(object));
+	}
+
+	/**
+	 * Tell the browser how long to wait before reconnecting, if the stream drops
+	 * @param millis the delay in milliseconds
+	 * @return false if the client is gone
+	 */
+	public boolean retry(long millis) {
+		return write(("retry: " + millis + "\n\n").getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Send a comment every so often, so proxies don't close the idle connection and clients that went away are noticed.
+	 * Runs on the shared timer from {@link RouterExecutors#timer()}, not on a worker thread. Calling it again replaces the old heartbeat.
+	 * A heartbeat is skipped if another thread is writing, or the client is behind on reading, since either way the connection is not idle.
+	 * @param interval time between heartbeats
+	 * @param unit the unit of the interval
+	 */
+	public void heartbeat(long interval, TimeUnit unit) {
+		ScheduledFuture<?> old = heartbeat;
+		if(old != null) {
+			old.cancel(false);
+		}
+		heartbeat = RouterExecutors.timer().scheduleAtFixedRate(this::beat, interval, interval, unit);
+		if(!stream.isOpen()) {
+			heartbeat.cancel(false);
+		}
+	}
+
+	private void beat() {
+		if(stream.isBacklogged() || !stream.lock.tryLock()) {
+			return;
+		}
+		try {
+			stream.write(HEARTBEAT);
+			stream.flush();
+		}
+		catch(IOException e) {
+			//The stream closed itself, which cancels the heartbeat
+		}
+		finally {
+			stream.lock.unlock();
+		}
+	}
+
+	/**
+	 * @return false once the stream was closed, or the client is known to be gone
+	 */
+	public boolean isOpen() {
+		return stream.isOpen();
+	}
+
+	/**
+	 * @return true if the client is behind on reading. Sending more waits for it to catch up, so a broadcaster may want to skip it.
+	 */
+	public boolean isBacklogged() {
+		return stream.isBacklogged();
+	}
+
+	/**
+	 * Run something once the client goes away or the stream is closed, for example to remove it from a list of subscribers
+	 * @param listener what to run
+	 */
+	public void onClose(Runnable listener) {
+		stream.onClose(listener);
+	}
+
+	/**
+	 * End the stream. The browser will reconnect after the retry delay, unless it closes the EventSource itself.
+	 */
+	public void close() {
+		stream.close();
+	}
+
+	private boolean write(byte[] bytes) {
+		try {
+			stream.write(bytes);
+			stream.flush();
+			return true;
+		}
+		catch(IOException e) {
+			return false;
+		}
+	}
+
+}
@@ -1,31 +1,40 @@
 package org.golde.router.objects;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
- * A wrapper around com.sun.net.httpserver.Headers.
+ * A wrapper around the header map of an {@link org.golde.router.engine.Exchange}.
  * Renames some variables, and removes some methods that are not used.
  * @author Eric Golde
  *
  */
 public class Headers {
 
-	private final com.sun.net.httpserver.Headers sunHeaders;
+	private Map<String, List<String>> headerMap;
 
 	/**
 	 * Creates the Headers object. Constructor used internally, not really for public use.
-	 * @param sunHeaders the com.sun.net.httpserver.Headers
+	 * @param headerMap the header map of the exchange, with case insensitive keys
 	 */
-	Headers(com.sun.net.httpserver.Headers sunHeaders) {
-		this.sunHeaders = sunHeaders;
+	Headers(Map<String, List<String>> headerMap) {
+		this.headerMap = headerMap;
+	}
+
+	/**
+	 * Point this wrapper at the headers of another exchange, when a request is recycled
+	 */
+	void wrap(Map<String, List<String>> headerMap) {
+		this.headerMap = headerMap;
 	}
 
 	/**
 	 * Removes all of the mappings from this map (optional operation). The map will be empty after this call returns.
 	 */
 	public void clear() {
-		sunHeaders.clear();
+		headerMap.clear();
 	}
 
 	/**
@@ -34,7 +43,7 @@ public class Headers {
 	 * @return true if this map maps one or more keys to the specified value
 	 */
 	public boolean containsKey(String key) {
-		return sunHeaders.containsKey(key);
+		return headerMap.containsKey(key);
 	}
 
 	/**
@@ -43,7 +52,8 @@ public class Headers {
 	 * @return the first string value associated with the key
 	 */
 	public String getFirst(String key) {
-		return sunHeaders.getFirst(key);
+		List<String> values = headerMap.get(key);
+		return values == null || values.isEmpty() ? null : values.get(0);
 	}
 
 	/**
@@ -54,7 +64,7 @@ public class Headers {
 	 * @return a list of values to which the specified key is mapped, or null if this map contains no mapping for the key
 	 */
 	public List<String> get(String key) {
-		return sunHeaders.get(key);
+		return headerMap.get(key);
 	}
 
 	/**
@@ -62,7 +72,7 @@ public class Headers {
 	 * @return a set view of the keys contained in this map
 	 */
 	public Set<String> getKeys() {
-		return sunHeaders.keySet();
+		return headerMap.keySet();
 	}
 
 	/**
@@ -71,12 +81,17 @@ public class Headers {
 	 * @param value the header value to set
 	 */
 	public void set(String key, String value) {
-		sunHeaders.add(key, value);
+		List<String> values = headerMap.get(key);
+		if(values == null) {
+			values = new ArrayList<String>(1);
+			headerMap.put(key, values);
+		}
+		values.add(value);
 	}
 
 	//Not sure why you would ever need this, but may add it if needed
 	//	public List<String> remove(String key) {
-	//		return sunHeaders.remove(key);
+	//		return headerMap.remove(key);
 	//	}
 
 	/**
@@ -84,7 +99,7 @@ public class Headers {
 	 * @return the number of key-value mappings in this map
 	 */
 	public int size() {
-		return sunHeaders.size();
+		return headerMap.size();
 	}
 
 }
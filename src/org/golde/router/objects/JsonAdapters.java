@@ -0,0 +1,100 @@
+package org.golde.router.objects;
+
+import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.golde.router.Router;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * The Gson a route uses, and the TypeAdapters it has needed so far.
+ * Every route gets its own, so the type a route sends or reads is looked up in Gson once, and after that comes straight from here.
+ * Routes almost always send the same type every time, so the last adapter is kept aside and checked before anything else.
+ * @author Eric Golde
+ *
+ */
+public final class JsonAdapters {
+
+	private final Router router;
+
+	/**
+	 * The Gson picked with @Route(gson = "..."), or null to follow {@link Router#getGson()}
+	 */
+	private final Gson gson;
+
+	private volatile Adapters adapters;
+	private volatile Last last;
+
+	/**
+	 * Creates the adapters for a route. Not normally used by the end user.
+	 * @param router the router
+	 * @param gson the Gson for this route, or null to use the router's
+	 */
+	public JsonAdapters(Router router, Gson gson) {
+		this.router = router;
+		this.gson = gson;
+	}
+
+	/**
+	 * @return the Gson this route serializes with
+	 */
+	public Gson getGson() {
+		return gson != null ? gson : router.getGson();
+	}
+
+	/**
+	 * Get the TypeAdapter for a type, from Gson the first time and from the cache after that
+	 * @param <T> the type
+	 * @param type the type
+	 * @return the adapter
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> TypeAdapter<T> getAdapter(Type type) {
+		Gson current = getGson();
+
+		Last l = last;
+		if(l != null && l.type == type && l.gson == current) {
+			return (TypeAdapter<T>) l.adapter;
+		}
+
+		Adapters a = adapters;
+		if(a == null || a.gson != current) {
+			//Router Gson was changed, adapters from the old one would serialize the old way
+			a = new Adapters(current);
+			adapters = a;
+		}
+
+		TypeAdapter<?> adapter = a.map.get(type);
+		if(adapter == null) {
+			adapter = current.getAdapter(TypeToken.get(type));
+			a.map.put(type, adapter);
+		}
+		last = new Last(current, type, adapter);
+		return (TypeAdapter<T>) adapter;
+	}
+
+	private static class Adapters {
+		final Gson gson;
+		final ConcurrentHashMap<Type, TypeAdapter<?>> map = new ConcurrentHashMap<Type, TypeAdapter<?>>();
+
+		Adapters(Gson gson) {
+			this.gson = gson;
+		}
+	}
+
+	private static class Last {
+		final Gson gson;
+		final Type type;
+		final TypeAdapter<?> adapter;
+
+		Last(Gson gson, Type type, TypeAdapter<?> adapter) {
+			this.gson = gson;
+			this.type = type;
+			this.adapter = adapter;
+		}
+	}
+
+}
@@ -0,0 +1,66 @@
+package org.golde.router.objects;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.golde.router.enums.StatusCode;
+import org.golde.router.exceptions.HttpStatusException;
+
+/**
+ * Stops reading a request body once it goes over the max body size, with a 413 Payload Too Large.
+ * @author Eric Golde
+ *
+ */
+class LimitedInputStream extends FilterInputStream {
+
+	private final long limit;
+	private long read = 0;
+
+	/**
+	 * @param in the body
+	 * @param limit the max number of bytes, or -1 for no limit
+	 */
+	LimitedInputStream(InputStream in, long limit) {
+		super(in);
+		this.limit = limit;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = super.read();
+		if(b != -1) {
+			count(1);
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int n = super.read(b, off, len);
+		if(n > 0) {
+			count(n);
+		}
+		return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = super.skip(n);
+		count(skipped);
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	private void count(long n) {
+		read += n;
+		if(limit >= 0 && read > limit) {
+			throw new HttpStatusException(StatusCode.PAYLOAD_TOO_LARGE, "413. Request body is too large.");
+		}
+	}
+
+}
@@ -0,0 +1,237 @@
+package org.golde.router.objects;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses query strings and url encoded form bodies in a single pass, without splitting.
+ * Names and values that contain no % or + are used as is, only the ones that need it are decoded.
+ * Bad escapes like %zz are kept as they were sent instead of failing the whole request.
+ * @author Eric Golde
+ *
+ */
+class ParameterParser {
+
+	private ParameterParser() {
+
+	}
+
+	/**
+	 * Parse a query string or form body
+	 * @param input the text, without the leading ?
+	 * @return the parameters. Empty if input is null or empty.
+	 */
+	static Parameters parse(String input) {
+		Parameters params = new Parameters();
+		if(input == null || input.isEmpty()) {
+			return params;
+		}
+
+		//Only allocated if something needs decoding
+		byte[] scratch = null;
+
+		int length = input.length();
+		int start = 0;
+		while(start <= length) {
+			int end = start;
+			int equals = -1;
+			boolean encoded = false;
+			while(end < length) {
+				char c = input.charAt(end);
+				if(c == '&') {
+					break;
+				}
+				if(c == '=' && equals == -1) {
+					equals = end;
+				}
+				else if(c == '%' || c == '+') {
+					encoded = true;
+				}
+				end++;
+			}
+
+			if(end > start) {
+				int nameEnd = equals == -1 ? end : equals;
+				if(nameEnd > start) {
+					String name;
+					String value;
+					if(encoded) {
+						if(scratch == null || scratch.length < (end - start) * 3) {
+							scratch = new byte[(end - start) * 3];
+						}
+						name = decode(input, start, nameEnd, scratch);
+						value = equals == -1 ? "" : decode(input, equals + 1, end, scratch);
+					}
+					else {
+						name = input.substring(start, nameEnd);
+						value = equals == -1 ? "" : input.substring(equals + 1, end);
+					}
+					params.add(name, value);
+				}
+			}
+
+			start = end + 1;
+		}
+		return params;
+	}
+
+	/**
+	 * Decode part of a string. + becomes a space, %XX becomes a byte, and the bytes are read as UTF-8.
+	 */
+	private static String decode(String input, int start, int end, byte[] scratch) {
+		boolean needed = false;
+		for(int i = start; i < end; i++) {
+			char c = input.charAt(i);
+			if(c == '%' || c == '+') {
+				needed = true;
+				break;
+			}
+		}
+		if(!needed) {
+			return input.substring(start, end);
+		}
+
+		int n = 0;
+		for(int i = start; i < end; i++) {
+			char c = input.charAt(i);
+			if(c == '+') {
+				scratch[n++] = ' ';
+			}
+			else if(c == '%' && hex(input, i + 1, end) != -1) {
+				scratch[n++] = (byte) hex(input, i + 1, end);
+				i += 2;
+			}
+			else if(c < 0x80) {
+				scratch[n++] = (byte) c;
+			}
+			else {
+				//Already a real character, put it back as UTF-8 so it decodes to itself
+				int cp = Character.codePointAt(input, i);
+				if(Character.charCount(cp) == 2) {
+					i++;
+				}
+				byte[] utf8 = new String(Character.toChars(cp)).getBytes(StandardCharsets.UTF_8);
+				System.arraycopy(utf8, 0, scratch, n, utf8.length);
+				n += utf8.length;
+			}
+		}
+		return new String(scratch, 0, n, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return the value of the two hex digits at index, or -1 if they are not hex
+	 */
+	private static int hex(String input, int index, int end) {
+		if(index + 1 >= end) {
+			return -1;
+		}
+		int hi = Character.digit(input.charAt(index), 16);
+		int lo = Character.digit(input.charAt(index + 1), 16);
+		return hi == -1 || lo == -1 ? -1 : (hi << 4) | lo;
+	}
+
+	/**
+	 * Parse a url encoded form straight from a stream, decoding as the bytes come in
+	 * @param in the body
+	 * @param charset the charset of the decoded bytes
+	 * @return the parameters
+	 * @throws IOException if the body could not be read
+	 */
+	static Parameters parse(InputStream in, Charset charset) throws IOException {
+		Parameters params = new Parameters();
+
+		byte[] buffer = new byte[8192];
+		byte[] token = new byte[256];
+		int tokenLength = 0;
+		String name = null;
+
+		//Bytes of a %XX escape we are in the middle of. pending is how many we have seen, including the %
+		int pending = 0;
+		int escape = 0;
+		byte firstDigit = 0;
+
+		int read;
+		while((read = in.read(buffer)) != -1) {
+			for(int i = 0; i < read; i++) {
+				byte b = buffer[i];
+
+				if(pending != 0) {
+					int digit = Character.digit(b, 16);
+					if(digit != -1) {
+						escape = (escape << 4) | digit;
+						firstDigit = b;
+						if(++pending == 3) {
+							token = ensure(token, tokenLength + 1);
+							token[tokenLength++] = (byte) escape;
+							pending = 0;
+						}
+						continue;
+					}
+					//Not an escape after all, keep what we have and look at this byte normally
+					token = ensure(token, tokenLength + pending);
+					token[tokenLength++] = '%';
+					if(pending == 2) {
+						token[tokenLength++] = firstDigit;
+					}
+					pending = 0;
+				}
+
+				if(b == '&') {
+					name = emit(params, name, token, tokenLength, charset);
+					tokenLength = 0;
+				}
+				else if(b == '=' && name == null) {
+					name = new String(token, 0, tokenLength, charset);
+					tokenLength = 0;
+				}
+				else if(b == '%') {
+					pending = 1;
+					escape = 0;
+				}
+				else {
+					token = ensure(token, tokenLength + 1);
+					token[tokenLength++] = b == '+' ? (byte) ' ' : b;
+				}
+			}
+		}
+
+		if(pending != 0) {
+			token = ensure(token, tokenLength + pending);
+			token[tokenLength++] = '%';
+			if(pending == 2) {
+				token[tokenLength++] = firstDigit;
+			}
+		}
+		emit(params, name, token, tokenLength, charset);
+		return params;
+	}
+
+	/**
+	 * Add the pair that just ended
+	 * @return null, ready for the next name
+	 */
+	private static String emit(Parameters params, String name, byte[] token, int tokenLength, Charset charset) {
+		if(name == null) {
+			//?flag, no = at all
+			if(tokenLength != 0) {
+				params.add(new String(token, 0, tokenLength, charset), "");
+			}
+		}
+		else if(!name.isEmpty()) {
+			params.add(name, new String(token, 0, tokenLength, charset));
+		}
+		return null;
+	}
+
+	private static byte[] ensure(byte[] array, int needed) {
+		if(needed <= array.length) {
+			return array;
+		}
+		byte[] bigger = new byte[Math.max(needed, array.length * 2)];
+		System.arraycopy(array, 0, bigger, 0, array.length);
+		return bigger;
+	}
+
+}
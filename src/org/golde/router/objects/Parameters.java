@@ -0,0 +1,157 @@
+package org.golde.router.objects;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Query parameters or url encoded form fields, in the order they were sent.
+ * A name can appear more than once (?tag=a&amp;tag=b), and can have no value at all (?flag), in which case its value is "".
+ * @author Eric Golde
+ *
+ */
+public class Parameters {
+
+	/**
+	 * Once there are more parameters than this, lookups use a map instead of checking every name
+	 */
+	private static final int INDEX_THRESHOLD = 16;
+
+	private String[] names;
+	private String[] values;
+	private int size = 0;
+
+	/**
+	 * Name to the index of its first value, only built for big forms
+	 */
+	private Map<String, Integer> index;
+
+	Parameters() {
+		this(8);
+	}
+
+	Parameters(int capacity) {
+		names = new String[capacity];
+		values = new String[capacity];
+	}
+
+	void add(String name, String value) {
+		if(size == names.length) {
+			names = Arrays.copyOf(names, size * 2);
+			values = Arrays.copyOf(values, size * 2);
+		}
+		names[size] = name;
+		values[size] = value;
+		if(index != null) {
+			index.putIfAbsent(name, size);
+		}
+		size++;
+	}
+
+	/**
+	 * Get the first value of a parameter
+	 * @param name the name of the parameter
+	 * @return the first value, "" if it was sent without a value, or null if it was not sent
+	 */
+	public String get(String name) {
+		int i = indexOf(name);
+		return i == -1 ? null : values[i];
+	}
+
+	/**
+	 * Get every value of a parameter that was sent more than once
+	 * @param name the name of the parameter
+	 * @return the values in the order they were sent. Empty if it was not sent.
+	 */
+	public List<String> getAll(String name) {
+		int first = indexOf(name);
+		if(first == -1) {
+			return Collections.emptyList();
+		}
+		List<String> all = new ArrayList<String>(2);
+		for(int i = first; i < size; i++) {
+			if(names[i].equals(name)) {
+				all.add(values[i]);
+			}
+		}
+		return all;
+	}
+
+	/**
+	 * Check if a parameter was sent, with or without a value. Useful for flags like ?debug
+	 * @param name the name of the parameter
+	 * @return true if it was sent
+	 */
+	public boolean has(String name) {
+		return indexOf(name) != -1;
+	}
+
+	/**
+	 * @return every name that was sent, in order, without duplicates
+	 */
+	public Set<String> getNames() {
+		Set<String> set = new LinkedHashSet<String>();
+		for(int i = 0; i < size; i++) {
+			set.add(names[i]);
+		}
+		return set;
+	}
+
+	/**
+	 * @return how many parameters were sent, counting repeated names
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Convert to a simple map. If a name was sent more than once, the last value wins.
+	 * @return a new map of name to value
+	 */
+	public Map<String, String> toMap() {
+		Map<String, String> map = new LinkedHashMap<String, String>(size * 2);
+		for(int i = 0; i < size; i++) {
+			map.put(names[i], values[i]);
+		}
+		return map;
+	}
+
+	private int indexOf(String name) {
+		if(size > INDEX_THRESHOLD) {
+			if(index == null) {
+				index = new HashMap<String, Integer>(size * 2);
+				for(int i = 0; i < size; i++) {
+					index.putIfAbsent(names[i], i);
+				}
+			}
+			Integer i = index.get(name);
+			return i == null ? -1 : i;
+		}
+
+		for(int i = 0; i < size; i++) {
+			if(names[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("{");
+		for(int i = 0; i < size; i++) {
+			if(i != 0) {
+				sb.append(", ");
+			}
+			sb.append(names[i]).append('=').append(values[i]);
+		}
+		return sb.append('}').toString();
+	}
+
+}
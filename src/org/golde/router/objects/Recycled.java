@@ -0,0 +1,40 @@
+package org.golde.router.objects;
+
+/**
+ * Guards against using a {@link Request} or {@link Response} after the router recycled it for another request, see Router.setRecycleRequests().
+ * @author Eric Golde
+ *
+ */
+final class Recycled {
+
+	/**
+	 * Shared by everything released while debugging is off, so releasing doesn't allocate
+	 */
+	private static final Throwable RELEASED = new Throwable("Turn on Router.setRecycleDebug(true) to see where it was released", null, false, false) {
+		private static final long serialVersionUID = 1L;
+	};
+
+	private Recycled() {
+
+	}
+
+	/**
+	 * @param debug true to remember where it was released, which costs a stack trace
+	 * @return the marker to keep in the released object
+	 */
+	static Throwable released(boolean debug) {
+		return debug ? new Throwable("Released here") : RELEASED;
+	}
+
+	/**
+	 * @param released the object's marker, null while it is in use
+	 * @param what "request" or "response"
+	 * @throws IllegalStateException if it was released
+	 */
+	static void check(Throwable released, String what) {
+		if(released != null) {
+			throw new IllegalStateException("This " + what + " already finished, and was recycled for another one. Routes can't keep the " + what + " after they return, return a CompletableFuture instead.", released);
+		}
+	}
+
+}
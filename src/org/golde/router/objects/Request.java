@@ -1,115 +1,380 @@
 package org.golde.router.objects;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.UnsupportedEncodingException;
-import java.net.URLDecoder;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.stream.Collectors;
 
+import org.golde.router.RouteTemplate;
 import org.golde.router.Router;
+import org.golde.router.engine.Exchange;
+import org.golde.router.enums.StatusCode;
+import org.golde.router.exceptions.HttpStatusException;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonSyntaxException;
-import com.sun.net.httpserver.HttpExchange;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.MalformedJsonException;
 
 import lombok.Getter;
 
 public class Request {
 
+	/**
+	 * The most a body array starts out as when the Content-Length is known
+	 */
+	private static final int INITIAL_BODY_SIZE = 64 * 1024;
+
 	/**
 	 * The instance of the router
 	 * @Router the router instance
 	 */
 	private final Router router;
-	private final HttpExchange exchange;
+	private Exchange exchange;
+	private JsonAdapters json;
 
-	@Getter private final Map<String, String> wildcards = new HashMap<String, String>();
-	@Getter private final Map<String, String> queryParameters = new HashMap<String, String>();
+	/**
+	 * The route that matched this request, used to find wildcards
+	 */
+	private RouteTemplate template;
 
 	/**
-	 * Get the headers from the request. Setting headers here will do nothing.
-	 * @return the headers object
+	 * The request path, without the query string
+	 * @return the path
+	 */
+	@Getter private String path;
+
+	/**
+	 * The raw query string, without the ?. Null if there is none.
+	 * @return the query string
+	 */
+	@Getter private String queryString;
+
+	/**
+	 * Set once the router recycled this request, see {@link #release(boolean)}
+	 */
+	private Throwable released;
+
+	//Everything below is only created when a route asks for it
+	private Map<String, String> wildcards;
+	private Map<String, String> queryParameters;
+	private Parameters query;
+	private Parameters form;
+	private Headers headers;
+
+	private byte[] body;
+	private InputStream bodyStream;
+
+	/**
+	 * Creates a request. Not normally used by the end user.
+	 * @param router the router
+	 * @param exchange the http exchange in the background
+	 * @param template the route that matched
+	 */
+	public Request(Router router, Exchange exchange, RouteTemplate template) {
+		this(router, exchange, template, exchange.getRequestURI());
+	}
+
+	private Request(Router router, Exchange exchange, RouteTemplate template, String uri) {
+		this(router, exchange, template, pathOf(uri), queryOf(uri));
+	}
+
+	/**
+	 * Creates a request from a request target that was already split up while finding the route. Not normally used by the end user.
+	 * @param router the router
+	 * @param exchange the http exchange in the background
+	 * @param template the route that matched
+	 * @param path the request path, without the query string
+	 * @param queryString the query string without the ?, or null if there is none
 	 */
-	@Getter private final Headers headers;
+	public Request(Router router, Exchange exchange, RouteTemplate template, String path, String queryString) {
+		this(router, exchange, template, path, queryString, router.getJsonAdapters());
+	}
 
-	public Request(Router router, HttpExchange exchange, String[] rawWildcards) {
+	/**
+	 * Creates a request for a route, with the route's Gson. Not normally used by the end user.
+	 * @param router the router
+	 * @param exchange the http exchange in the background
+	 * @param template the route that matched
+	 * @param path the request path, without the query string
+	 * @param queryString the query string without the ?, or null if there is none
+	 * @param json the Gson and cached adapters of the route
+	 */
+	public Request(Router router, Exchange exchange, RouteTemplate template, String path, String queryString, JsonAdapters json) {
 		this.router = router;
+		this.json = json;
+		this.exchange = exchange;
+		this.template = template;
+		this.path = path;
+		this.queryString = queryString;
+	}
+
+	/**
+	 * Turn a released request into a new one, when the router recycles requests. Not normally used by the end user.
+	 * @param exchange the http exchange in the background
+	 * @param template the route that matched
+	 * @param path the request path, without the query string
+	 * @param queryString the query string without the ?, or null if there is none
+	 * @param json the Gson and cached adapters of the route
+	 * @return this request
+	 */
+	public Request reuse(Exchange exchange, RouteTemplate template, String path, String queryString, JsonAdapters json) {
 		this.exchange = exchange;
-		parseWildcards(exchange, rawWildcards);
-		parseQueryParams(exchange);
-		this.headers = new Headers(exchange.getRequestHeaders());
+		this.template = template;
+		this.path = path;
+		this.queryString = queryString;
+		this.json = json;
+		this.released = null;
+		if(headers != null) {
+			headers.wrap(exchange.getRequestHeaders());
+		}
+		return this;
+	}
+
+	/**
+	 * Forget the exchange once the request is finished, so the router can reuse this request. Not normally used by the end user.
+	 * Using the request after this throws an IllegalStateException.
+	 * @param debug remember where it was released, to show in that exception
+	 */
+	public void release(boolean debug) {
+		exchange = null;
+		template = RouteTemplate.EMPTY;
+		path = null;
+		queryString = null;
+		wildcards = null;
+		queryParameters = null;
+		query = null;
+		form = null;
+		body = null;
+		bodyStream = null;
+		released = Recycled.released(debug);
+	}
+
+	private static String pathOf(String uri) {
+		int queryStart = uri.indexOf('?');
+		return queryStart == -1 ? uri : uri.substring(0, queryStart);
+	}
+
+	private static String queryOf(String uri) {
+		int queryStart = uri.indexOf('?');
+		return queryStart == -1 ? null : uri.substring(queryStart + 1);
 	}
 
-	private void parseQueryParams(HttpExchange exchange) {
-		String[] stripQueryParams = exchange.getRequestURI().toString().split("\\?");
+	/**
+	 * Get the headers from the request. Setting headers here will do nothing.
+	 * @return the headers object
+	 */
+	public Headers getHeaders() {
+		Recycled.check(released, "request");
+		if(headers == null) {
+			headers = new Headers(exchange.getRequestHeaders());
+		}
+		return headers;
+	}
 
-		if(stripQueryParams.length == 2) {
-			queryParameters.putAll(parseParamaters(stripQueryParams[1]));
+	/**
+	 * Get every wildcard from the url. Prefer {@link #getWildcard(String)} if you only need one, it doesn't build a map.
+	 * @return a map of wildcard name to value
+	 */
+	public Map<String, String> getWildcards() {
+		Recycled.check(released, "request");
+		if(wildcards == null) {
+			wildcards = new HashMap<String, String>(template.getWildcardCount() * 2);
+			template.fillWildcards(path, wildcards);
 		}
+		return wildcards;
 	}
 
-	private void parseWildcards(HttpExchange exchange, String[] rawWildcards) {
-		String[] split = exchange.getRequestURI().toString().substring(1).split("/");
+	/**
+	 * Get every query parameter from the url. If a parameter was sent more than once, the last value is used, see {@link #getQuery()} for all of them.
+	 * Parameters without a value, like ?flag, are in the map with a value of "".
+	 * @return a map of query parameter name to value
+	 */
+	public Map<String, String> getQueryParameters() {
+		if(queryParameters == null) {
+			queryParameters = getQuery().toMap();
+		}
+		return queryParameters;
+	}
 
-		for(int i = 0; i < rawWildcards.length; i++) {
-			String rawStr = rawWildcards[i];
-			String splitStr = split[i];
-			if(rawStr.length() !=0 && rawStr.charAt(0) == '{' && rawStr.charAt(rawStr.length() - 1) == '}') {
-				System.out.println(rawStr + " -- " + splitStr);
-				wildcards.put(rawStr.replace("{", "").replace("}", ""), splitStr);
-			}
+	/**
+	 * Get the query parameters from the url, keeping every value of parameters that were sent more than once
+	 * @return the query parameters
+	 */
+	public Parameters getQuery() {
+		Recycled.check(released, "request");
+		if(query == null) {
+			query = ParameterParser.parse(queryString);
 		}
+		return query;
 	}
 
 	/**
-	 * Parses the body as a Map(Key, Value).
+	 * Get a single query parameter from the url
+	 * @param name the name of the parameter
+	 * @return the first value, "" if it was sent without a value, or null if it was not sent
+	 */
+	public String getQuery(String name) {
+		return getQuery().get(name);
+	}
+
+	/**
+	 * Parses the body as a Map(Key, Value). If a field was sent more than once, the last value is used, see {@link #getForm()} for all of them.
 	 * This only works if the forum was submitted as application/x-www-form-urlencoded. You should be using this anyway.
 	 * @return a map of key value pairs, of the given forum input.
 	 */
 	public Map<String, String> getBodyAsForm() {
-		return parseParamaters(getBodyAsText());
+		return getForm().toMap();
 	}
 
-	private static Map<String, String> parseParamaters(String in) {
-		String[] pairs = in.split("\\&");
-		Map<String, String> toReturn = new HashMap<String, String>();
+	/**
+	 * Parses the body as a application/x-www-form-urlencoded form, as it is read from the client. The body is never built up as a String.
+	 * The form is only read once, calling this again returns the same fields.
+	 * @return the form fields
+	 */
+	public Parameters getForm() {
+		if(form == null) {
+			try {
+				form = ParameterParser.parse(getBodyStream(), getBodyCharset());
+			}
+			catch(IOException e) {
+				e.printStackTrace();
+				form = ParameterParser.parse(null);
+			}
+		}
+		return form;
+	}
+
+	/**
+	 * Returns the body of the submitted request as text, decoded with the charset from the Content-Type header (UTF-8 if there is none).
+	 * Line endings are kept exactly as they were sent.
+	 * @return the body as a string. 
+	 */
+	public String getBodyAsText() {
+		return new String(getBodyBytes(), getBodyCharset());
+	}
 
+	/**
+	 * Returns the exact bytes of the body. The body is read the first time this is called, and the same array is returned after that.
+	 * If the body is bigger than {@link Router#getMaxBodySize()}, a 413 Payload Too Large is sent and the route stops.
+	 * @return the body. Empty if there is no body.
+	 */
+	public byte[] getBodyBytes() {
+		Recycled.check(released, "request");
+		if(body != null) {
+			return body;
+		}
+
+		long length = getContentLength();
+		long max = router.getMaxBodySize();
+		if(max >= 0 && length > max) {
+			throw new HttpStatusException(StatusCode.PAYLOAD_TOO_LARGE, "413. Request body is too large.");
+		}
+
+		InputStream in = getBodyStream();
 		try {
-			for (int i = 0; i < pairs.length; i++) {
-				String[] fields = pairs[i].split("=");
-				if(fields.length != 2) {
-					return null;
+			if(length >= 0 && length <= Integer.MAX_VALUE) {
+				//We know the size, but only trust it as far as the client actually sends. The array grows as the body arrives, up to that size,
+				//so a client can't claim a large Content-Length and make us hold that much memory without sending it.
+				int total = (int) length;
+				byte[] bytes = new byte[Math.min(total, INITIAL_BODY_SIZE)];
+				int read = 0;
+				while(read < total) {
+					if(read == bytes.length) {
+						bytes = Arrays.copyOf(bytes, (int) Math.min(total, bytes.length * 2L));
+					}
+					int n = in.read(bytes, read, bytes.length - read);
+					if(n == -1) {
+						break;
+					}
+					read += n;
+				}
+				body = read == bytes.length ? bytes : Arrays.copyOf(bytes, read);
+			}
+			else {
+				byte[] bytes = new byte[8192];
+				int read = 0;
+				int n;
+				while((n = in.read(bytes, read, bytes.length - read)) != -1) {
+					read += n;
+					if(read == bytes.length) {
+						bytes = Arrays.copyOf(bytes, bytes.length * 2);
+					}
 				}
-				String key = URLDecoder.decode(fields[0], "UTF-8");
-				String value = URLDecoder.decode(fields[1], "UTF-8");
-				toReturn.put(key, value);
+				body = Arrays.copyOf(bytes, read);
 			}
 		}
-		catch(UnsupportedEncodingException e) {
-			return null;
+		catch(IOException e) {
+			e.printStackTrace();
+			body = new byte[0];
 		}
 
-		return toReturn;
+		bodyStream = null;
+		return body;
 	}
 
 	/**
-	 * Returns the body is the submitted request into a string of text, separated by new line characters
-	 * @return the body as a string. 
+	 * Returns the body as a stream, for routes that want to process it as it arrives. The stream can only be read once.
+	 * Reading more than {@link Router#getMaxBodySize()} bytes sends a 413 Payload Too Large and stops the route.
+	 * If {@link #getBodyBytes()} was already called, this reads from the saved bytes instead.
+	 * @return the body stream
 	 */
-	public String getBodyAsText() {
-		InputStream inputStream = exchange.getRequestBody();
+	public InputStream getBodyStream() {
+		Recycled.check(released, "request");
+		if(body != null) {
+			return new ByteArrayInputStream(body);
+		}
+		if(bodyStream == null) {
+			bodyStream = new LimitedInputStream(exchange.getRequestBody(), router.getMaxBodySize());
+		}
+		return bodyStream;
+	}
 
-		String text = new BufferedReader(
-				new InputStreamReader(inputStream, StandardCharsets.UTF_8))
-				.lines()
-				.collect(Collectors.joining("\n"));
+	/**
+	 * @return the Content-Length header, or -1 if the client didn't send one
+	 */
+	public long getContentLength() {
+		String contentLength = getHeaders().getFirst("Content-Length");
+		if(contentLength == null) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(contentLength.trim());
+		}
+		catch(NumberFormatException e) {
+			return -1;
+		}
+	}
 
-		return text;
+	private Charset getBodyCharset() {
+		String contentType = getHeaders().getFirst("Content-Type");
+		if(contentType != null) {
+			int index = contentType.toLowerCase().indexOf("charset=");
+			if(index != -1) {
+				String name = contentType.substring(index + 8).trim();
+				int end = name.indexOf(';');
+				if(end != -1) {
+					name = name.substring(0, end).trim();
+				}
+				name = name.replace("\"", "");
+				try {
+					return Charset.forName(name);
+				}
+				catch(IllegalArgumentException e) {
+					//Unknown charset, fall back to UTF-8
+				}
+			}
+		}
+		return StandardCharsets.UTF_8;
 	}
 
 	/**
@@ -117,14 +382,76 @@ public class Request {
 	 * @return A JSON object of the body. Returns null if it failed to parse the JSON
 	 */
 	public JsonObject getBodyAsJson() {
+		return readJson(JsonObject.class);
+	}
+
+	/**
+	 * Read the body as JSON straight into an object, as it is read from the client. The body is never built up as a String.
+	 * @param <T> the type to read
+	 * @param clazz the class to read
+	 * @return the object, or null if the body was empty or failed to parse
+	 */
+	public <T> T readJson(Class<T> clazz) {
+		return readJson((Type) clazz);
+	}
+
+	/**
+	 * Same as {@link #readJson(Class)}, for generic types such as List&lt;User&gt;
+	 * @param <T> the type to read
+	 * @param type the type to read, for example new TypeToken&lt;List&lt;User&gt;&gt;(){}.getType()
+	 * @return the object, or null if the body was empty or failed to parse
+	 */
+	public <T> T readJson(Type type) {
 		try {
-			return router.getGson().fromJson(getBodyAsText(), JsonObject.class);
+			return parseJson(type);
 		}
-		catch(JsonSyntaxException e) {
+		catch(MalformedJsonException | JsonParseException | IllegalStateException | NumberFormatException e) {
 			System.err.println("Malformed JSON recieved!");
 			e.printStackTrace();
 			return null;
 		}
+		catch(IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Same as {@link #readJson(Type)}, but a missing body or bad JSON sends a 400 Bad Request and stops the route, instead of returning null
+	 * @param <T> the type to read
+	 * @param type the type to read
+	 * @return the object, never null
+	 */
+	public <T> T readJsonRequired(Type type) {
+		T value;
+		try {
+			value = parseJson(type);
+		}
+		catch(MalformedJsonException | EOFException | JsonParseException | IllegalStateException | NumberFormatException e) {
+			throw new HttpStatusException(StatusCode.BAD_REQUEST, "400. Request body is not valid JSON.", e);
+		}
+		catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		if(value == null) {
+			throw new HttpStatusException(StatusCode.BAD_REQUEST, "400. Request body is missing.");
+		}
+		return value;
+	}
+
+	private <T> T parseJson(Type type) throws IOException {
+		try(JsonReader reader = json.getGson().newJsonReader(new InputStreamReader(getBodyStream(), getBodyCharset()))) {
+			//Lenient like Gson.fromJson
+			reader.setLenient(true);
+			try {
+				reader.peek();
+			}
+			catch(EOFException e) {
+				//Empty body
+				return null;
+			}
+			return json.<T>getAdapter(type).read(reader);
+		}
 	}
 
 	//May be added, but for the time being, this method is useless
@@ -142,8 +469,15 @@ public class Request {
 	 * @return the value as a string. Null if it doesn't exist.
 	 */
 	public String getWildcard(String name) {
-		name = name.replace("{", "").replace("}", "");
-		return wildcards.get(name);
+		Recycled.check(released, "request");
+		if(name.length() > 1 && name.charAt(0) == '{' && name.charAt(name.length() - 1) == '}') {
+			name = name.substring(1, name.length() - 1);
+		}
+		if(wildcards != null) {
+			return wildcards.get(name);
+		}
+		//Only cut out the one segment we need
+		return template.getWildcard(path, name);
 	}
 
 	/**
@@ -175,11 +509,12 @@ public class Request {
 	}
 
 	/**
-	 * Get the Gson instance from the router
+	 * Get the Gson this route uses. The router's Gson, unless the route picked another one with @Route(gson = "...")
 	 * @return the gson instance
 	 */
 	public Gson getGson() {
-		return router.getGson();
+		Recycled.check(released, "request");
+		return json.getGson();
 	}
 
 }
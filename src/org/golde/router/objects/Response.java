@@ -1,20 +1,44 @@
 package org.golde.router.objects;
 
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
 
 import org.golde.router.Router;
+import org.golde.router.engine.Exchange;
 import org.golde.router.enums.StatusCode;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonNull;
 import com.google.gson.JsonObject;
-import com.sun.net.httpserver.HttpExchange;
+import com.google.gson.stream.JsonWriter;
 
 import lombok.Getter;
 
@@ -26,23 +50,110 @@ import lombok.Getter;
 public class Response {
 
 	private final Router router;
-	private final HttpExchange exchange;
+	private Exchange exchange;
+	private JsonAdapters json;
 	private StatusCode statusCode = StatusCode.OK;
 
 	/**
-	 * The headers that are sent back in the response
-	 * @return the headers class
+	 * Has the status line and headers been sent yet
+	 * @return true if the response was already started, and can't be changed anymore
+	 */
+	@Getter private volatile boolean committed = false;
+
+	/**
+	 * The status code that was actually sent, which can differ from {@link #setStatusCode(StatusCode)} for things like 304 and 206
+	 * @return the status code, or 0 if nothing was sent yet
+	 */
+	@Getter private int sentStatus = 0;
+
+	/**
+	 * Body bytes of a response with a known length. Chunked responses are counted by chunkedBody instead.
+	 */
+	private long fixedLength = 0;
+	private CountingOutputStream chunkedBody;
+
+	/**
+	 * The body opened with {@link #openStream(String)} or {@link #sse()}, which stays open after the route returns
+	 * @return the stream, or null if the response is not streamed
+	 */
+	@Getter private volatile ResponseStream stream;
+
+	private Headers headers;
+
+	/**
+	 * Set while the response is being made for a {@link ResponseCache}
 	 */
-	@Getter private final Headers headers;
+	private volatile Recording recording;
+
+	/**
+	 * Set once the router recycled this response, see {@link #release(boolean)}
+	 */
+	private Throwable released;
 
 	/**
 	 * Creates a response. Not normally used by the end user.
 	 * @param exchange the http exchange in the background
 	 */
-	public Response(Router router, HttpExchange exchange) {
+	public Response(Router router, Exchange exchange) {
+		this(router, exchange, router.getJsonAdapters());
+	}
+
+	/**
+	 * Creates a response for a route. Not normally used by the end user.
+	 * @param router the router
+	 * @param exchange the http exchange in the background
+	 * @param json the Gson and cached adapters of the route
+	 */
+	public Response(Router router, Exchange exchange, JsonAdapters json) {
 		this.router = router;
 		this.exchange = exchange;
-		this.headers = new Headers(exchange.getResponseHeaders());
+		this.json = json;
+	}
+
+	/**
+	 * Turn a released response into a new one, when the router recycles responses. Not normally used by the end user.
+	 * @param exchange the http exchange in the background
+	 * @param json the Gson and cached adapters of the route
+	 * @return this response
+	 */
+	public Response reuse(Exchange exchange, JsonAdapters json) {
+		this.exchange = exchange;
+		this.json = json;
+		this.statusCode = StatusCode.OK;
+		this.committed = false;
+		this.sentStatus = 0;
+		this.fixedLength = 0;
+		this.chunkedBody = null;
+		this.stream = null;
+		this.recording = null;
+		this.released = null;
+		if(headers != null) {
+			headers.wrap(exchange.getResponseHeaders());
+		}
+		return this;
+	}
+
+	/**
+	 * Forget the exchange once the response is sent, so the router can reuse this response. Not normally used by the end user.
+	 * Using the response after this throws an IllegalStateException.
+	 * @param debug remember where it was released, to show in that exception
+	 */
+	public void release(boolean debug) {
+		exchange = null;
+		chunkedBody = null;
+		released = Recycled.released(debug);
+	}
+
+	/**
+	 * The headers that are sent back in the response
+	 * @return the headers class
+	 */
+	public Headers getHeaders() {
+		Recycled.check(released, "response");
+		if(headers == null) {
+			headers = new Headers(exchange.getResponseHeaders());
+		}
+		return headers;
 	}
 
 	/**
@@ -74,8 +185,115 @@ public class Response {
 	 * @param json the json to send
 	 */
 	public void sendJSON(JsonObject json) {
-		String text = router.getGson().toJson(json);
-		send("application/json", text);
+		sendJSON(json, JsonObject.class);
+	}
+
+	/**
+	 * Serialize any object to JSON and send it. The TypeAdapter for the object's class is looked up once per route, and reused after that.
+	 * Use {@link #streamJSON(Object)} instead for very big responses.
+	 * @param object the object to send, or null to send a JSON null
+	 */
+	public void sendJSON(Object object) {
+		sendJSON(object, object == null ? JsonNull.class : object.getClass());
+	}
+
+	/**
+	 * Same as {@link #sendJSON(Object)}, for generic types such as List&lt;User&gt;
+	 * @param object the object to send
+	 * @param type the type of the object, for example new TypeToken&lt;List&lt;User&gt;&gt;(){}.getType()
+	 */
+	public void sendJSON(Object object, Type type) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+		try {
+			JsonWriter jsonWriter = json.getGson().newJsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+			writeJson(jsonWriter, object, type);
+			jsonWriter.close();
+		}
+		catch(IOException | JsonIOException e) {
+			//Only the object itself can throw here, the bytes go to memory
+			e.printStackTrace();
+			setStatusCode(StatusCode.INTERNAL_SERVER_ERROR).sendText("An internal error occurred while processing this request.");
+			return;
+		}
+		send("application/json", out.toByteArray());
+	}
+
+	/**
+	 * Serialize any object to JSON, writing it straight to the client as it is serialized.
+	 * Nothing is built up in memory first, so this is the better choice for big responses. Uses chunked encoding since the length is not known up front.
+	 * @param object the object to send, or null to send a JSON null
+	 */
+	public void streamJSON(Object object) {
+		streamJSON(object, object == null ? JsonNull.class : object.getClass());
+	}
+
+	/**
+	 * Same as {@link #streamJSON(Object)}, for generic types such as List&lt;User&gt;
+	 * @param object the object to send
+	 * @param type the type of the object, for example new TypeToken&lt;List&lt;User&gt;&gt;(){}.getType()
+	 */
+	public void streamJSON(Object object, Type type) {
+		Recycled.check(released, "response");
+		try {
+			OutputStream body = openChunked("application/json; charset=utf-8", true);
+
+			Writer writer = new BufferedWriter(new OutputStreamWriter(body, StandardCharsets.UTF_8), 8192);
+			JsonWriter jsonWriter = json.getGson().newJsonWriter(writer);
+			writeJson(jsonWriter, object, type);
+			jsonWriter.close();
+		}
+		catch(IOException | JsonIOException e) {
+			e.printStackTrace();
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Start a chunked response that stays open after the route returns. Write to it from any thread, and close it once done.
+	 * Nothing is sent until the stream is flushed. Compressed like any other response if the client accepts it.
+	 * @param contentType the content type
+	 * @return the body
+	 * @throws IOException if the client is gone
+	 */
+	public ResponseStream openStream(String contentType) throws IOException {
+		return openStream(contentType, true);
+	}
+
+	/**
+	 * Start a Server-Sent Events stream. Keep the EventStream and send events to it whenever there is something new.
+	 * Events are never compressed, a Deflater per open stream costs too much memory with thousands of clients.
+	 * @return the event stream
+	 * @throws IOException if the client is gone
+	 */
+	public EventStream sse() throws IOException {
+		getHeaders().set("Cache-Control", "no-cache");
+		//Stops nginx from buffering the events
+		getHeaders().set("X-Accel-Buffering", "no");
+		ResponseStream body = openStream("text/event-stream; charset=utf-8", false);
+		body.flush();
+		return new EventStream(body, json.getGson());
+	}
+
+	private ResponseStream openStream(String contentType, boolean compress) throws IOException {
+		Recycled.check(released, "response");
+		if(stream != null) {
+			throw new IllegalStateException("The response is already streaming");
+		}
+		stream = new ResponseStream(exchange, openChunked(contentType, compress));
+		return stream;
+	}
+
+	/**
+	 * Write an object with the route's cached adapter. Lenient like Gson.toJson, so numbers and strings can be sent on their own.
+	 */
+	private void writeJson(JsonWriter writer, Object object, Type type) throws IOException {
+		writer.setLenient(true);
+		if(object == null) {
+			writer.nullValue();
+		}
+		else {
+			json.getAdapter(type).write(writer, object);
+		}
 	}
 
 	/**
@@ -93,14 +311,55 @@ public class Response {
 	 * @param response the array of bytes to send to the client
 	 */
 	public void send(String contentType, byte[] response) {
+		Recording r = recording;
+		if(r != null) {
+			recording = null;
+			CachedResponse entry = r.capture(contentType, response);
+			r.cache.loaded(r.key, r.loader, entry);
+			if(entry != null) {
+				sendCached(entry);
+				return;
+			}
+		}
+		send(contentType, response, null);
+	}
+
+	/**
+	 * Send a response stored by a {@link ResponseCache}, with the headers the route set, or a 304 Not Modified if the client already has it
+	 * @param entry the response
+	 */
+	public void sendCached(CachedResponse entry) {
+		for(Map.Entry<String, List<String>> header : entry.headers.entrySet()) {
+			exchange.getResponseHeaders().put(header.getKey(), new ArrayList<String>(header.getValue()));
+		}
+		if(checkNotModified(entry.etag, -1)) {
+			return;
+		}
+		send(entry.contentType, entry.data, entry);
+	}
+
+	/**
+	 * @param cached the cache entry the body came from, so its compressed copies can be reused. Null for everything else.
+	 */
+	private void send(String contentType, byte[] response, CachedResponse cached) {
+		Recycled.check(released, "response");
 		try {
 
 			if(statusCode != StatusCode.NO_CONTENT) {
-				exchange.getResponseHeaders().add("Content-Type", contentType);
-				exchange.sendResponseHeaders(statusCode.getCode(), response.length);
+				getHeaders().set("Content-Type", contentType);
+				String encoding = compressionFor(contentType, response.length);
+				if(encoding != null) {
+					byte[] compressed = cached != null ? cached.compressed(encoding, router.getCompressionLevel()) : CompressingOutputStream.compress(response, encoding, router.getCompressionLevel());
+					//Already compressed data like a png inside json can come out bigger
+					if(compressed.length < response.length) {
+						response = compressed;
+						setContentEncoding(encoding);
+					}
+				}
+				sendHeaders(statusCode.getCode(), response.length);
 			}
 			else {
-				exchange.sendResponseHeaders(statusCode.getCode(), -1);
+				sendHeaders(statusCode.getCode(), -1);
 			}
 
 			OutputStream os = exchange.getResponseBody();
@@ -117,42 +376,262 @@ public class Response {
 		}
 	}
 
+	/**
+	 * Store the response in a cache if it is a 200 sent with one of the send methods, then complete the loader.
+	 * Used internally for routes with @Route(cache = ...).
+	 * @param cache the cache
+	 * @param key the key the response is stored under
+	 * @param ttlMillis how long the response is kept for
+	 * @param loader the future given to {@link ResponseCache#claim(String, CompletableFuture)}
+	 */
+	public void record(ResponseCache cache, String key, long ttlMillis, CompletableFuture<CachedResponse> loader) {
+		recording = new Recording(cache, key, ttlMillis, loader);
+	}
+
+	/**
+	 * Stop recording without storing anything, so requests waiting on the response run the route themselves. Does nothing if nothing is being recorded.
+	 */
+	public void endRecording() {
+		Recording r = recording;
+		if(r != null) {
+			recording = null;
+			r.cache.loaded(r.key, r.loader, null);
+		}
+	}
+
+	/**
+	 * Send the status line and headers. Every response goes through here.
+	 * @param code the status code
+	 * @param length the length of the body. -1 for no body, 0 for chunked.
+	 * @throws IOException if the connection is gone
+	 */
+	private void sendHeaders(int code, long length) throws IOException {
+		//Anything that gets here without going through send() can't be cached
+		endRecording();
+		committed = true;
+		sentStatus = code;
+		if(length > 0) {
+			fixedLength = length;
+		}
+		exchange.sendResponseHeaders(code, length);
+	}
+
+	/**
+	 * Send the headers for a chunked response, compressing it if the client accepts that
+	 * @param contentType the content type
+	 * @param compress false to never compress it
+	 * @return the body to write to. Must be closed to finish the response.
+	 * @throws IOException if the connection is gone
+	 */
+	private OutputStream openChunked(String contentType, boolean compress) throws IOException {
+		getHeaders().set("Content-Type", contentType);
+		String encoding = compress ? compressionFor(contentType, -1) : null;
+		if(encoding != null) {
+			setContentEncoding(encoding);
+		}
+		sendHeaders(statusCode.getCode(), 0);
+		return encoding == null ? chunkedBody() : new CompressingOutputStream(chunkedBody(), encoding, router.getCompressionLevel());
+	}
+
+	/**
+	 * Decide if a response should be compressed. Sets Vary: Accept-Encoding for any response that could be, so caches keep both versions apart.
+	 * @param contentType the content type of the response
+	 * @param length the length of the body, or -1 if it is not known yet
+	 * @return the encoding to use, or null to send it as is
+	 */
+	private String compressionFor(String contentType, long length) {
+		if(!router.isCompression() || contentType == null) {
+			return null;
+		}
+		if(length >= 0 && length < router.getCompressionMinSize()) {
+			return null;
+		}
+		if(getHeaders().containsKey("Content-Encoding")) {
+			//Already encoded, for example a precompressed static file
+			return null;
+		}
+		if(!Compression.isCompressible(contentType, router.getCompressionTypes())) {
+			return null;
+		}
+
+		List<String> vary = getHeaders().get("Vary");
+		boolean hasVary = false;
+		if(vary != null) {
+			for(String value : vary) {
+				hasVary |= value.toLowerCase().contains("accept-encoding");
+			}
+		}
+		if(!hasVary) {
+			getHeaders().set("Vary", "Accept-Encoding");
+		}
+
+		List<String> acceptEncoding = exchange.getRequestHeaders().get("Accept-Encoding");
+		return Compression.negotiate(acceptEncoding == null || acceptEncoding.isEmpty() ? null : String.join(",", acceptEncoding));
+	}
+
+	/**
+	 * Set Content-Encoding. A strong ETag is made weak, since the compressed bytes are not the same bytes the ETag was made for.
+	 */
+	private void setContentEncoding(String encoding) {
+		getHeaders().set("Content-Encoding", encoding);
+		List<String> etag = getHeaders().get("ETag");
+		if(etag != null && !etag.isEmpty() && etag.get(0).startsWith("\"")) {
+			etag.set(0, "W/" + etag.get(0));
+		}
+	}
+
+	/**
+	 * The body of a chunked response, counting how much is written to it
+	 */
+	private OutputStream chunkedBody() {
+		if(chunkedBody == null) {
+			chunkedBody = new CountingOutputStream(exchange.getResponseBody());
+		}
+		return chunkedBody;
+	}
+
+	/**
+	 * @return how many body bytes were sent, or are going to be sent for responses with a known length
+	 */
+	public long getBytesWritten() {
+		return fixedLength + (chunkedBody == null ? 0 : chunkedBody.getCount());
+	}
+
 	/**
 	 * Set the status code for the data being set. Defaults to 200 OK.
 	 * @param statusCode Status code being set
 	 * @return Returns the Response, used for chaining
 	 */
 	public Response setStatusCode(StatusCode statusCode) {
+		Recycled.check(released, "response");
 		this.statusCode = statusCode;
 		return this;
 	}
 
 	/**
-	 * Get the Gson instance from the router
+	 * Get the Gson this route uses. The router's Gson, unless the route picked another one with @Route(gson = "...")
 	 * @return the gson instance
 	 */
 	public Gson getGson() {
-		return router.getGson();
+		Recycled.check(released, "response");
+		return json.getGson();
 	}
 	
+	/**
+	 * Set the ETag and Last-Modified headers, and if the request already has this version send a 304 Not Modified.
+	 * @param etag the quoted ETag of the content, or null if there is none
+	 * @param lastModified when the content last changed in epoch milliseconds, or -1 if unknown
+	 * @return true if a 304 was sent, and there is nothing left to do
+	 */
+	public boolean checkNotModified(String etag, long lastModified) {
+		Recycled.check(released, "response");
+		if(etag != null) {
+			getHeaders().set("ETag", etag);
+		}
+		if(lastModified >= 0) {
+			getHeaders().set("Last-Modified", formatHttpDate(lastModified));
+		}
+
+		Headers requestHeaders = new Headers(exchange.getRequestHeaders());
+		String ifNoneMatch = requestHeaders.getFirst("If-None-Match");
+		boolean notModified;
+		if(ifNoneMatch != null) {
+			//If-None-Match always wins over If-Modified-Since
+			notModified = etag != null && etagMatches(ifNoneMatch, etag);
+		}
+		else {
+			long since = parseHttpDate(requestHeaders.getFirst("If-Modified-Since"));
+			notModified = since != -1 && lastModified >= 0 && lastModified / 1000 <= since / 1000;
+		}
+
+		if(!notModified) {
+			return false;
+		}
+
+		setStatusCode(StatusCode.NOT_MODIFIED);
+		try {
+			sendHeaders(StatusCode.NOT_MODIFIED.getCode(), -1);
+			exchange.getResponseBody().close();
+		}
+		catch(IOException e) {
+			e.printStackTrace();
+			exchange.close();
+		}
+		return true;
+	}
+
 	/**
 	 * Sends a file to the sender. If the file is not found, sends a 404 not found. If something else went wrong, it throws a 500 internal server error.
+	 * The file is streamed from disk, straight to the socket when the engine supports it, so it is never loaded onto the heap.
+	 * Supports Range requests (206 Partial Content), and answers conditional requests with 304 Not Modified.
 	 * @param file The file to send
 	 * @param autoDownload should we auto download the file, or should we try to display it in the browser like images?
 	 */
 	public void sendFile(File file, boolean autoDownload) {
-		if(!file.exists()) {
+		sendFile(file, autoDownload, null);
+	}
+
+	/**
+	 * Same as {@link #sendFile(File, boolean)}, but with a content type that is already known
+	 * @param file The file to send
+	 * @param autoDownload should we auto download the file, or should we try to display it in the browser like images?
+	 * @param mime the content type, or null to probe the file for it
+	 */
+	public void sendFile(File file, boolean autoDownload, String mime) {
+		Recycled.check(released, "response");
+		if(!file.isFile()) {
 			setStatusCode(StatusCode.NOT_FOUND).sendText("File not found.");
 			return;
 		}
 		
-		try {
-			Path path = file.toPath();
-			byte[] data = Files.readAllBytes(path);
-			String mime = Files.probeContentType(path);
+		Path path = file.toPath();
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long length = channel.size();
+			long lastModified = file.lastModified();
+			String etag = "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length) + "\"";
+			if(mime == null) {
+				mime = Files.probeContentType(path);
+			}
+			if(mime == null) {
+				mime = "application/octet-stream";
+			}
+
 			getHeaders().set("Accept-Ranges", "bytes");
 			getHeaders().set("Content-Disposition", "" + (autoDownload ? "attachment" : "inline") + "; filename=\"" + file.getName() + "\"");
-			send(mime, data);
+
+			if(checkNotModified(etag, lastModified)) {
+				return;
+			}
+
+			List<ByteRange> ranges = null;
+			Headers requestHeaders = new Headers(exchange.getRequestHeaders());
+			String ifRange = requestHeaders.getFirst("If-Range");
+			//If-Range needs a strong match (RFC 7233 3.2). Weak ETags never match, and neither do dates, because mtimes of
+			//reproducible builds are often all the same, so the client gets the whole file instead of a slice of a file that changed
+			if(ifRange == null || (ifRange.startsWith("\"") && ifRange.equals(etag))) {
+				ranges = ByteRange.parse(requestHeaders.getFirst("Range"), length);
+			}
+
+			if(ranges == null) {
+				getHeaders().set("Content-Type", mime);
+				sendFileRegion(channel, 0, length, statusCode);
+			}
+			else if(ranges.isEmpty()) {
+				getHeaders().set("Content-Range", "bytes */" + length);
+				setStatusCode(StatusCode.RANGE_NOT_SATISFIABLE);
+				sendHeaders(statusCode.getCode(), -1);
+				exchange.getResponseBody().close();
+			}
+			else if(ranges.size() == 1) {
+				ByteRange range = ranges.get(0);
+				getHeaders().set("Content-Type", mime);
+				getHeaders().set("Content-Range", "bytes " + range.start + "-" + range.end + "/" + length);
+				setStatusCode(StatusCode.PARTIAL_CONTENT);
+				sendFileRegion(channel, range.start, range.length(), statusCode);
+			}
+			else {
+				sendMultipartRanges(channel, ranges, length, mime);
+			}
 		}
 		catch(Exception e) {
 			e.printStackTrace();
@@ -171,4 +650,119 @@ public class Response {
 		}
 	}
 
+	private void sendFileRegion(FileChannel channel, long position, long length, StatusCode status) throws IOException {
+		sendHeaders(status.getCode(), length == 0 ? -1 : length);
+		exchange.sendFile(channel, position, length);
+		exchange.getResponseBody().close();
+	}
+
+	/**
+	 * Send several ranges of a file as a multipart/byteranges body
+	 */
+	private void sendMultipartRanges(FileChannel channel, List<ByteRange> ranges, long length, String mime) throws IOException {
+		String boundary = Long.toHexString(System.nanoTime()) + Long.toHexString(length);
+		byte[][] partHeads = new byte[ranges.size()][];
+		byte[] end = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.ISO_8859_1);
+
+		long total = end.length;
+		for(int i = 0; i < ranges.size(); i++) {
+			ByteRange range = ranges.get(i);
+			partHeads[i] = ("\r\n--" + boundary + "\r\nContent-Type: " + mime + "\r\nContent-Range: bytes " + range.start + "-" + range.end + "/" + length + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+			total += partHeads[i].length + range.length();
+		}
+
+		getHeaders().set("Content-Type", "multipart/byteranges; boundary=" + boundary);
+		setStatusCode(StatusCode.PARTIAL_CONTENT);
+		sendHeaders(statusCode.getCode(), total);
+
+		OutputStream os = exchange.getResponseBody();
+		for(int i = 0; i < ranges.size(); i++) {
+			ByteRange range = ranges.get(i);
+			os.write(partHeads[i]);
+			os.flush();
+			exchange.sendFile(channel, range.start, range.length());
+		}
+		os.write(end);
+		os.close();
+	}
+
+	private static boolean etagMatches(String header, String etag) {
+		for(String candidate : header.split(",")) {
+			candidate = candidate.trim();
+			if(candidate.startsWith("W/")) {
+				candidate = candidate.substring(2);
+			}
+			if(candidate.equals("*") || candidate.equals(etag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Headers send() sets on its own, which are not stored with a cached response
+	 */
+	private static final Set<String> SET_BY_SEND = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+
+	static {
+		SET_BY_SEND.addAll(Arrays.asList("Content-Type", "Content-Encoding", "Content-Length", "ETag", "Last-Modified", "Transfer-Encoding"));
+	}
+
+	private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+
+	private static String formatHttpDate(long millis) {
+		return HTTP_DATE.format(Instant.ofEpochMilli(millis));
+	}
+
+	/**
+	 * @return the date in epoch milliseconds, or -1 if it could not be parsed
+	 */
+	private static long parseHttpDate(String date) {
+		if(date == null) {
+			return -1;
+		}
+		try {
+			return ZonedDateTime.parse(date, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+		}
+		catch(DateTimeParseException e) {
+			return -1;
+		}
+	}
+
+	private class Recording {
+		final ResponseCache cache;
+		final String key;
+		final long ttlMillis;
+		final CompletableFuture<CachedResponse> loader;
+
+		Recording(ResponseCache cache, String key, long ttlMillis, CompletableFuture<CachedResponse> loader) {
+			this.cache = cache;
+			this.key = key;
+			this.ttlMillis = ttlMillis;
+			this.loader = loader;
+		}
+
+		/**
+		 * @return the response to store, or null if it can't be cached
+		 */
+		CachedResponse capture(String contentType, byte[] body) {
+			if(statusCode != StatusCode.OK || contentType == null) {
+				return null;
+			}
+
+			Map<String, List<String>> routeHeaders = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+			for(Map.Entry<String, List<String>> header : exchange.getResponseHeaders().entrySet()) {
+				String name = header.getKey();
+				if(name.equalsIgnoreCase("Set-Cookie")) {
+					//Another client must never get this client's cookie
+					return null;
+				}
+				if(!SET_BY_SEND.contains(name)) {
+					routeHeaders.put(name, new ArrayList<String>(header.getValue()));
+				}
+			}
+			return new CachedResponse(contentType, body, routeHeaders, ttlMillis);
+		}
+	}
+
 }
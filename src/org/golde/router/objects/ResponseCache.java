@@ -0,0 +1,179 @@
+package org.golde.router.objects;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A cache of route responses, for routes with @Route(cache = @Cached(...)). Each router has one, see Router.getResponseCache().
+ * Entries expire after the route's TTL, and the total size of the cached bodies is bounded.
+ * While a response is being made, other requests for it can wait on it with {@link #claim(String, CompletableFuture)} instead of running the route again.
+ * <p>
+ * Hits never lock, they only mark the entry as used. When the cache is full, a clock hand goes around the entries under a lock,
+ * giving used entries a second chance and dropping the ones nobody asked for since the hand last passed, which is close to least recently used.
+ * @author Eric Golde
+ *
+ */
+public class ResponseCache {
+
+	/**
+	 * How many bytes of responses to keep in memory. Responses that were not used recently are dropped first.
+	 * @param maxBytes the limit
+	 * @return the limit
+	 */
+	@Getter
+	@Setter
+	private volatile long maxBytes;
+
+	private final AtomicLong totalBytes = new AtomicLong();
+	private final ConcurrentHashMap<String, CachedResponse> entries = new ConcurrentHashMap<String, CachedResponse>();
+
+	/**
+	 * Where eviction left off. Only touched while holding the lock on this cache.
+	 */
+	private Iterator<Map.Entry<String, CachedResponse>> hand;
+
+	/**
+	 * Responses that a request is making right now
+	 */
+	private final ConcurrentHashMap<String, CompletableFuture<CachedResponse>> loading = new ConcurrentHashMap<String, CompletableFuture<CachedResponse>>();
+
+	/**
+	 * Create a cache. Used internally, each router already has one.
+	 * @param maxBytes how many bytes of responses to keep in memory
+	 */
+	public ResponseCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Get a response that has not expired
+	 * @param key the cache key
+	 * @return the response, or null if there is none
+	 */
+	public CachedResponse get(String key) {
+		CachedResponse entry = entries.get(key);
+		if(entry == null) {
+			return null;
+		}
+		if(entry.isExpired(System.nanoTime())) {
+			remove(key, entry);
+			return null;
+		}
+		//Only write when it changes, so a hot entry isn't written by every thread on every hit
+		if(!entry.used) {
+			entry.used = true;
+		}
+		return entry;
+	}
+
+	/**
+	 * Say that this request is going to make the response for a key. Record it with {@link Response#record(ResponseCache, String, long, CompletableFuture)}.
+	 * @param key the cache key
+	 * @param loader completed with the response once it is made, or with null if it could not be cached
+	 * @return null if this request got the key, otherwise the future of the request that is already making it
+	 */
+	public CompletableFuture<CachedResponse> claim(String key, CompletableFuture<CachedResponse> loader) {
+		return loading.putIfAbsent(key, loader);
+	}
+
+	/**
+	 * Forget every response
+	 */
+	public synchronized void clear() {
+		for(Map.Entry<String, CachedResponse> e : entries.entrySet()) {
+			remove(e.getKey(), e.getValue());
+		}
+	}
+
+	/**
+	 * @return how many responses are cached
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Store a response that was made for a claimed key, and hand it to every request waiting for it
+	 * @param entry the response, or null if it could not be cached
+	 */
+	void loaded(String key, CompletableFuture<CachedResponse> loader, CachedResponse entry) {
+		if(entry != null) {
+			put(key, entry);
+		}
+		loading.remove(key, loader);
+		loader.complete(entry);
+	}
+
+	private synchronized void put(String key, CachedResponse entry) {
+		if(entry.size() > maxBytes) {
+			return;
+		}
+
+		CachedResponse existing = entries.put(key, entry);
+		if(existing != null) {
+			totalBytes.addAndGet(-existing.size());
+		}
+		totalBytes.addAndGet(entry.size());
+
+		long now = System.nanoTime();
+		//Every entry gets at most two looks, one to clear its used mark and one to drop it
+		int budget = entries.size() * 2 + 2;
+		while(totalBytes.get() > maxBytes && budget-- > 0) {
+			Map.Entry<String, CachedResponse> e = advance();
+			if(e == null) {
+				break;
+			}
+			CachedResponse candidate = e.getValue();
+			if(candidate == entry) {
+				continue;
+			}
+			if(candidate.used && !candidate.isExpired(now)) {
+				candidate.used = false;
+			}
+			else {
+				remove(e.getKey(), candidate);
+			}
+		}
+
+		//Expired entries nobody asked for again would otherwise sit there until the cache is full
+		for(int checked = 0; checked < 4; checked++) {
+			Map.Entry<String, CachedResponse> e = advance();
+			if(e == null) {
+				break;
+			}
+			if(e.getValue().isExpired(now)) {
+				remove(e.getKey(), e.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Move the clock hand to the next entry, starting over at the end. Must hold the lock.
+	 * @return the entry, or null if the cache is empty
+	 */
+	private Map.Entry<String, CachedResponse> advance() {
+		if(hand == null || !hand.hasNext()) {
+			hand = entries.entrySet().iterator();
+			if(!hand.hasNext()) {
+				return null;
+			}
+		}
+		return hand.next();
+	}
+
+	/**
+	 * Remove an entry if it is still the one cached under the key, so its size is only taken off once
+	 */
+	private void remove(String key, CachedResponse entry) {
+		if(entries.remove(key, entry)) {
+			totalBytes.addAndGet(-entry.size());
+		}
+	}
+
+}
@@ -0,0 +1,180 @@
+package org.golde.router.objects;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.golde.router.engine.Exchange;
+
+/**
+ * A response body that stays open after the route returns, sent with chunked encoding. Get one from {@link Response#openStream(String)}.
+ * Any thread can write to it, and nothing reaches the client until {@link #flush()} is called or the buffer fills up.
+ * Writes wait while the client is slow to read (see {@link #isBacklogged()}), so one slow client can't make the server queue up unlimited memory.
+ * If a write fails the client is gone: the stream closes itself and runs its {@link #onClose(Runnable)} callbacks.
+ * @author Eric Golde
+ *
+ */
+public class ResponseStream extends OutputStream {
+
+	private final Exchange exchange;
+	private final OutputStream out;
+
+	/**
+	 * Writes can come from the route, other threads and the heartbeat timer at the same time
+	 */
+	final ReentrantLock lock = new ReentrantLock();
+
+	private final List<Runnable> closeListeners = new ArrayList<Runnable>(2);
+	private volatile boolean closed = false;
+
+	ResponseStream(Exchange exchange, OutputStream out) {
+		this.exchange = exchange;
+		this.out = out;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		lock.lock();
+		try {
+			checkOpen();
+			out.write(b);
+		}
+		catch(IOException e) {
+			failed();
+			throw e;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		lock.lock();
+		try {
+			checkOpen();
+			out.write(b, off, len);
+		}
+		catch(IOException e) {
+			failed();
+			throw e;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Send everything written so far to the client as a chunk
+	 * @throws IOException if the client is gone
+	 */
+	@Override
+	public void flush() throws IOException {
+		lock.lock();
+		try {
+			checkOpen();
+			out.flush();
+		}
+		catch(IOException e) {
+			failed();
+			throw e;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Send the last chunk and finish the response. Does nothing if it is already closed.
+	 */
+	@Override
+	public void close() {
+		lock.lock();
+		try {
+			if(closed) {
+				return;
+			}
+			try {
+				out.close();
+			}
+			catch(IOException e) {
+				exchange.close();
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+		closed();
+	}
+
+	/**
+	 * @return false once the stream was closed, or the client is known to be gone
+	 */
+	public boolean isOpen() {
+		return !closed && exchange.isOpen();
+	}
+
+	/**
+	 * @return true if the client has a lot of unread bytes waiting, and the next write would wait for it to catch up
+	 */
+	public boolean isBacklogged() {
+		return exchange.isBacklogged();
+	}
+
+	/**
+	 * Run something once the stream closes, because the response finished or the client went away. Runs right away if it is already closed.
+	 * @param listener what to run. Runs on whichever thread closed the stream.
+	 */
+	public void onClose(Runnable listener) {
+		synchronized(closeListeners) {
+			if(!closed) {
+				closeListeners.add(listener);
+				return;
+			}
+		}
+		listener.run();
+	}
+
+	private void checkOpen() throws IOException {
+		if(closed) {
+			throw new IOException("Stream is closed");
+		}
+		if(!exchange.isOpen()) {
+			throw new IOException("Client disconnected");
+		}
+	}
+
+	/**
+	 * A write failed, so the client is gone. Throw the connection away instead of trying to finish the body.
+	 */
+	private void failed() {
+		if(closed) {
+			return;
+		}
+		exchange.close();
+		closed();
+	}
+
+	private void closed() {
+		Runnable[] listeners;
+		synchronized(closeListeners) {
+			if(closed) {
+				return;
+			}
+			closed = true;
+			listeners = closeListeners.toArray(new Runnable[0]);
+			closeListeners.clear();
+		}
+		for(Runnable listener : listeners) {
+			try {
+				listener.run();
+			}
+			catch(Throwable t) {
+				t.printStackTrace();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,39 @@
+package org.golde.router.routes;
+
+import org.golde.router.Router;
+import org.golde.router.annotations.Route;
+import org.golde.router.enums.StatusCode;
+import org.golde.router.objects.Request;
+import org.golde.router.objects.Response;
+
+/**
+ * Liveness at /health/live and readiness at /health/ready, for load balancers and orchestrators.
+ * Both answer 200 when healthy and 503 when not. Readiness turns 503 as soon as the router starts stopping.
+ * Off by default, turn it on with router.register(new HealthRoute(router)).
+ * @author Eric Golde
+ *
+ */
+public class HealthRoute {
+
+	private final Router router;
+
+	public HealthRoute(Router router) {
+		this.router = router;
+	}
+
+	@Route("health/live")
+	public void live(Request req, Response res) {
+		send(res, router.isAlive());
+	}
+
+	@Route("health/ready")
+	public void ready(Request req, Response res) {
+		send(res, router.isReady());
+	}
+
+	private void send(Response res, boolean healthy) {
+		res.getHeaders().set("Cache-Control", "no-store");
+		res.setStatusCode(healthy ? StatusCode.OK : StatusCode.SERVICE_UNAVAILABLE).sendText(router.getState().name());
+	}
+
+}
@@ -0,0 +1,27 @@
+package org.golde.router.routes;
+
+import org.golde.router.Router;
+import org.golde.router.annotations.Route;
+import org.golde.router.objects.Request;
+import org.golde.router.objects.Response;
+
+/**
+ * Serves the router's metrics at /metrics in the Prometheus text format.
+ * Off by default, turn it on with router.register(new MetricsRoute(router)).
+ * @author Eric Golde
+ *
+ */
+public class MetricsRoute {
+
+	private final Router router;
+
+	public MetricsRoute(Router router) {
+		this.router = router;
+	}
+
+	@Route("metrics")
+	public void metrics(Request req, Response res) {
+		res.send("text/plain; version=0.0.4; charset=utf-8", router.getMetrics().toPrometheus());
+	}
+
+}
@@ -0,0 +1,179 @@
+package org.golde.router.routes;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import lombok.AllArgsConstructor;
+
+/**
+ * A least recently used cache of files served by a {@link StaticMount}.
+ * Every file gets an entry with its content type, ETag and precompressed siblings, so none of that is looked up again.
+ * Small files also keep their bytes, ready to send. The total size of the cached bytes is bounded.
+ * @author Eric Golde
+ *
+ */
+class StaticFileCache {
+
+	private final long maxBytes;
+	private final long maxFileSize;
+
+	/**
+	 * The file that is loaded when a directory is asked for, or null to not serve directories
+	 */
+	private final String indexFile;
+
+	private long totalBytes = 0;
+	private final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<Path, Entry>(64, 0.75f, true);
+
+	/**
+	 * Goes up every time something is invalidated, so a load that started before that doesn't put back what was just forgotten
+	 */
+	private long generation = 0;
+
+	StaticFileCache(long maxBytes, long maxFileSize, String indexFile) {
+		this.maxBytes = maxBytes;
+		this.maxFileSize = maxFileSize;
+		this.indexFile = indexFile;
+	}
+
+	/**
+	 * Get a file, loading it from disk if it is not cached. A directory loads its index file, and stays cached under the directory.
+	 * @param path the file
+	 * @param mime the content type to use, or null to probe the file
+	 * @return the entry, or null if the file does not exist or is not a regular file
+	 * @throws IOException if the file could not be read
+	 */
+	Entry get(Path path, String mime) throws IOException {
+		long loadedAt;
+		synchronized(this) {
+			Entry entry = entries.get(path);
+			if(entry != null) {
+				return entry;
+			}
+			loadedAt = generation;
+		}
+
+		Path file = indexFile != null && Files.isDirectory(path) ? path.resolve(indexFile) : path;
+		Entry entry = load(file, mime);
+		if(entry == null) {
+			return null;
+		}
+
+		synchronized(this) {
+			if(generation != loadedAt) {
+				//Something changed on disk while we were loading, it may have been this file. Serve it, but don't cache it.
+				return entry;
+			}
+
+			Entry existing = entries.put(path, entry);
+			if(existing != null) {
+				totalBytes -= existing.size();
+			}
+			totalBytes += entry.size();
+
+			Iterator<Entry> oldest = entries.values().iterator();
+			while(totalBytes > maxBytes && oldest.hasNext()) {
+				Entry evict = oldest.next();
+				if(evict == entry) {
+					continue;
+				}
+				totalBytes -= evict.size();
+				oldest.remove();
+			}
+		}
+		return entry;
+	}
+
+	/**
+	 * Forget a file that changed on disk, and the directory it is the index file of.
+	 * Also forgets the file it is a compressed version of, since that entry remembers which siblings exist.
+	 * @param path the file that changed
+	 */
+	synchronized void invalidate(Path path) {
+		generation++;
+
+		Path original = null;
+		String name = path.getFileName() == null ? "" : path.getFileName().toString();
+		if(name.endsWith(".gz") || name.endsWith(".br")) {
+			original = path.resolveSibling(name.substring(0, name.length() - 3));
+		}
+
+		//If a whole directory was removed or renamed, this also forgets everything inside it
+		Iterator<Map.Entry<Path, Entry>> it = entries.entrySet().iterator();
+		while(it.hasNext()) {
+			Map.Entry<Path, Entry> e = it.next();
+			Path file = e.getValue().path;
+			if(e.getKey().startsWith(path) || file.equals(path) || file.equals(original)) {
+				totalBytes -= e.getValue().size();
+				it.remove();
+			}
+		}
+	}
+
+	synchronized void clear() {
+		generation++;
+		entries.clear();
+		totalBytes = 0;
+	}
+
+	private Entry load(Path path, String mime) throws IOException {
+		if(!Files.isRegularFile(path)) {
+			return null;
+		}
+
+		BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		long length = attributes.size();
+		long lastModified = attributes.lastModifiedTime().toMillis();
+
+		if(mime == null) {
+			mime = Files.probeContentType(path);
+			if(mime == null) {
+				mime = "application/octet-stream";
+			}
+		}
+
+		byte[] data = length <= maxFileSize ? Files.readAllBytes(path) : null;
+		if(data != null && data.length != length) {
+			//Changed while we were reading it, don't cache the bytes
+			data = null;
+		}
+
+		String name = path.getFileName().toString();
+		Path gzip = path.resolveSibling(name + ".gz");
+		Path brotli = path.resolveSibling(name + ".br");
+
+		String etag = "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length) + "\"";
+		return new Entry(path, mime, length, lastModified, etag, data, Files.isRegularFile(gzip) ? gzip : null, Files.isRegularFile(brotli) ? brotli : null);
+	}
+
+	@AllArgsConstructor
+	static class Entry {
+		final Path path;
+		final String mime;
+		final long length;
+		final long lastModified;
+		final String etag;
+
+		/**
+		 * The whole file, or null if it is too big to cache
+		 */
+		final byte[] data;
+
+		/**
+		 * Precompressed siblings, null if they don't exist
+		 */
+		final Path gzip;
+		final Path brotli;
+
+		private long size() {
+			//Rough overhead of the entry itself, so lots of big files without data still count for something
+			return 256 + (data == null ? 0 : data.length);
+		}
+	}
+
+}
@@ -0,0 +1,260 @@
+package org.golde.router.routes;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import org.golde.router.objects.Compression;
+import org.golde.router.objects.Request;
+import org.golde.router.objects.Response;
+
+import lombok.Getter;
+
+/**
+ * Serves every file inside a directory under a url prefix. Created with {@link org.golde.router.Router#serveStatic(String, Path)}.
+ * Small files are kept in memory, and files are watched so changes on disk show up right away.
+ * If the client accepts it, a precompressed sibling (style.css.br or style.css.gz) is sent instead of the file itself.
+ * @author Eric Golde
+ *
+ */
+public class StaticMount {
+
+	/**
+	 * The url prefix, lower case, without a leading or trailing /
+	 * @return the prefix
+	 */
+	@Getter private final String prefix;
+
+	/**
+	 * The directory files are served from
+	 * @return the root directory
+	 */
+	@Getter private final Path root;
+
+	/**
+	 * The file that is sent when a directory is requested
+	 */
+	private final String indexFile = "index.html";
+
+	private final StaticFileCache cache;
+	private WatchService watchService;
+
+	/**
+	 * Create a static mount. Used internally, use {@link org.golde.router.Router#serveStatic(String, Path)} instead.
+	 * @param prefix the url prefix
+	 * @param root the directory to serve
+	 * @param maxCacheBytes how many bytes of file content to keep in memory
+	 * @param maxCachedFileSize files bigger than this are always streamed from disk
+	 */
+	public StaticMount(String prefix, Path root, long maxCacheBytes, long maxCachedFileSize) {
+		while(prefix.startsWith("/")) {
+			prefix = prefix.substring(1);
+		}
+		while(prefix.endsWith("/")) {
+			prefix = prefix.substring(0, prefix.length() - 1);
+		}
+		this.prefix = prefix.toLowerCase();
+		this.root = root.toAbsolutePath().normalize();
+		this.cache = new StaticFileCache(maxCacheBytes, maxCachedFileSize, indexFile);
+
+		try {
+			watch();
+		}
+		catch(IOException e) {
+			System.err.println("Failed to watch " + this.root + " for changes. Changed files may be served from memory until the router restarts.");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Try to serve a request
+	 * @param path the request path, without the query string
+	 * @param req the request
+	 * @param res the response
+	 * @return false if the path is not inside this mount, or the file does not exist
+	 */
+	public boolean handle(String path, Request req, Response res) {
+		Path file = resolve(path);
+		if(file == null) {
+			return false;
+		}
+
+		try {
+			//Directories are turned into their index file by the cache, so a cached file costs no trips to the disk
+			StaticFileCache.Entry entry = cache.get(file, null);
+			if(entry == null) {
+				return false;
+			}
+
+			boolean ranged = req.getHeaders().getFirst("Range") != null;
+			StaticFileCache.Entry send = entry;
+			if(entry.gzip != null || entry.brotli != null) {
+				res.getHeaders().set("Vary", "Accept-Encoding");
+
+				String acceptEncoding = req.getHeaders().getFirst("Accept-Encoding");
+				if(!ranged && acceptEncoding != null) {
+					StaticFileCache.Entry variant = null;
+					if(entry.brotli != null && Compression.accepts(acceptEncoding, "br")) {
+						variant = cache.get(entry.brotli, entry.mime);
+						if(variant != null) {
+							res.getHeaders().set("Content-Encoding", "br");
+						}
+					}
+					if(variant == null && entry.gzip != null && Compression.accepts(acceptEncoding, "gzip")) {
+						variant = cache.get(entry.gzip, entry.mime);
+						if(variant != null) {
+							res.getHeaders().set("Content-Encoding", "gzip");
+						}
+					}
+					if(variant != null) {
+						send = variant;
+					}
+				}
+			}
+
+			if(send.data == null || ranged) {
+				res.sendFile(send.path.toFile(), false, send.mime);
+				return true;
+			}
+
+			res.getHeaders().set("Accept-Ranges", "bytes");
+			if(res.checkNotModified(send.etag, send.lastModified)) {
+				return true;
+			}
+			res.send(send.mime, send.data);
+			return true;
+		}
+		catch(IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * Turn a request path into a file inside the root
+	 * @return the file, or null if the path is not under the prefix or tries to leave the root
+	 */
+	private Path resolve(String path) {
+		while(path.startsWith("/")) {
+			path = path.substring(1);
+		}
+
+		if(!prefix.isEmpty()) {
+			if(!path.regionMatches(true, 0, prefix, 0, prefix.length())) {
+				return null;
+			}
+			if(path.length() > prefix.length() && path.charAt(prefix.length()) != '/') {
+				return null;
+			}
+			path = path.substring(prefix.length());
+		}
+
+		String relative;
+		try {
+			//Keep + as a +, it is not a space in a path
+			relative = URLDecoder.decode(path.replace("+", "%2B"), StandardCharsets.UTF_8.name());
+		}
+		catch(IOException | IllegalArgumentException e) {
+			return null;
+		}
+
+		while(relative.startsWith("/")) {
+			relative = relative.substring(1);
+		}
+		if(relative.indexOf('\0') != -1) {
+			return null;
+		}
+
+		Path file;
+		try {
+			file = root.resolve(relative).normalize();
+		}
+		catch(RuntimeException e) {
+			return null;
+		}
+		return file.startsWith(root) ? file : null;
+	}
+
+	/**
+	 * Stop watching the directory for changes
+	 */
+	public void close() {
+		if(watchService != null) {
+			try {
+				watchService.close();
+			}
+			catch(IOException ignored) {
+
+			}
+		}
+		cache.clear();
+	}
+
+	private void watch() throws IOException {
+		if(!Files.isDirectory(root)) {
+			return;
+		}
+
+		watchService = FileSystems.getDefault().newWatchService();
+		registerAll(root);
+
+		Thread thread = new Thread(this::pollChanges, "router-static-watch");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void registerAll(Path directory) throws IOException {
+		Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	private void pollChanges() {
+		try {
+			while(true) {
+				WatchKey key = watchService.take();
+				Path directory = (Path) key.watchable();
+
+				for(WatchEvent<?> event : key.pollEvents()) {
+					if(event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						cache.clear();
+						continue;
+					}
+
+					Path changed = directory.resolve((Path) event.context());
+					cache.invalidate(changed);
+
+					if(event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(changed)) {
+						try {
+							registerAll(changed);
+						}
+						catch(IOException e) {
+							e.printStackTrace();
+						}
+					}
+				}
+
+				key.reset();
+			}
+		}
+		catch(InterruptedException | ClosedWatchServiceException e) {
+			//Mount was closed
+		}
+	}
+
+}